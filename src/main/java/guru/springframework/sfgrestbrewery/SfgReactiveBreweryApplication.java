@@ -5,6 +5,7 @@ import io.r2dbc.spi.ConnectionFactory;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.boot.context.metrics.buffering.BufferingApplicationStartup;
 import org.springframework.context.annotation.Bean;
 import org.springframework.core.io.Resource;
 import org.springframework.r2dbc.connection.init.ConnectionFactoryInitializer;
@@ -17,7 +18,10 @@ import reactor.core.publisher.Mono;
 public class SfgReactiveBreweryApplication {
 
 	public static void main(String[] args) {
-		SpringApplication.run(SfgReactiveBreweryApplication.class, args);
+		SpringApplication application = new SpringApplication(SfgReactiveBreweryApplication.class);
+		// recorded startup steps are served, per phase, by the actuator's startup endpoint
+		application.setApplicationStartup(new BufferingApplicationStartup(4096));
+		application.run(args);
 	}
 
 
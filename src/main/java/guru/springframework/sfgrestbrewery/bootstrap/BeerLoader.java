@@ -1,22 +1,43 @@
 package guru.springframework.sfgrestbrewery.bootstrap;
 
+import guru.springframework.sfgrestbrewery.config.SchemaInitializer;
 import guru.springframework.sfgrestbrewery.domain.Beer;
 import guru.springframework.sfgrestbrewery.repositories.BeerRepository;
+import guru.springframework.sfgrestbrewery.services.BeerSearchIndex;
 import guru.springframework.sfgrestbrewery.web.model.BeerStyleEnum;
-import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.CommandLineRunner;
+import org.springframework.cache.CacheManager;
 import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
 
 import java.math.BigDecimal;
 import java.math.BigInteger;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import static guru.springframework.sfgrestbrewery.config.CacheConfig.BEER_COUNT_CACHE;
+import static guru.springframework.sfgrestbrewery.config.CacheConfig.BEER_LIST_CACHE;
 
 /**
  * Created by jt on 3/7/21.
+ *
+ * Loads the seed catalogue, then sfg.brewery.loader.synthetic-beers generated beers, into an empty database.
+ * Runs in the background as batched inserts, sfg.brewery.loader.concurrency batches in flight at a time,
+ * so startup does not wait on it. The search index is then built from every beer in the database.
+ * BeerLoaderHealthIndicator holds readiness back until all of it is done, and reports how long each
+ * phase took. Running after startup, they are not part of the actuator's startup timeline.
  */
 @Slf4j
-@RequiredArgsConstructor
 @Component
 public class BeerLoader implements CommandLineRunner {
 
@@ -52,292 +73,186 @@ public class BeerLoader implements CommandLineRunner {
     public static final String BEER_30_UPC = "8670687641074";
 
 
+    static final String SCHEMA_PHASE = "schema";
+    static final String SEEDING_PHASE = "seeding";
+    static final String SEARCH_INDEX_PHASE = "searchIndex";
+
     private final BeerRepository beerRepository;
+    private final CacheManager cacheManager;
+    private final SchemaInitializer schemaInitializer;
+    private final BeerSearchIndex searchIndex;
+    private final int syntheticBeers;
+    private final int batchSize;
+    private final int concurrency;
+    private final SyntheticBeerGenerator generator;
+
+    private volatile Mono<Long> loaded = Mono.empty();
+    private volatile boolean done;
+    private volatile Throwable failure;
+
+    private final ConcurrentMap<String, Duration> phaseTimes = new ConcurrentHashMap<>();
+
+    public BeerLoader(BeerRepository beerRepository, CacheManager cacheManager, SchemaInitializer schemaInitializer,
+                      BeerSearchIndex searchIndex,
+                      @Value("${sfg.brewery.loader.synthetic-beers:0}") int syntheticBeers,
+                      @Value("${sfg.brewery.loader.batch-size:1000}") int batchSize,
+                      @Value("${sfg.brewery.loader.concurrency:4}") int concurrency,
+                      @Value("${sfg.brewery.loader.seed:42}") long seed) {
+        this.beerRepository = beerRepository;
+        this.cacheManager = cacheManager;
+        this.schemaInitializer = schemaInitializer;
+        this.searchIndex = searchIndex;
+        this.syntheticBeers = syntheticBeers;
+        this.batchSize = batchSize;
+        this.concurrency = concurrency;
+        this.generator = new SyntheticBeerGenerator(seed);
+    }
 
     @Override
-    public void run(String... args) throws Exception {
-        loadBeerObjects();
+    public void run(String... args) {
+        // subscribed off the main thread, the H2 driver runs statements on the subscribing thread
+        loaded = schemaInitializer.initialized()
+                .then(loadBeerObjects())
+                .flatMap(loadedCount -> buildSearchIndex().thenReturn(loadedCount))
+                .subscribeOn(Schedulers.boundedElastic())
+                .doOnSuccess(loadedCount -> done = true)
+                .doOnError(e -> failure = e)
+                .cache();
+        loaded.subscribe(null, e -> log.error("Loading initial data failed", e));
     }
 
-    private synchronized void loadBeerObjects() {
-        log.debug("Loading initial data. Count is: {}", beerRepository.count().block() );
-
-        if (beerRepository.count().block() == 0) {
-
-            Random random = new Random();
-
-            beerRepository.save(Beer.builder()
-                    .beerName("Mango Bobs")
-                    .beerStyle(BeerStyleEnum.ALE)
-                    .upc(BEER_1_UPC)
-                    .price(new BigDecimal(BigInteger.valueOf(random.nextInt(10000)), 2))
-                    .quantityOnHand(random.nextInt(5000))
-                    .build())
-                    .block();
-
-            beerRepository.save(Beer.builder()
-                    .beerName("Galaxy Cat")
-                    .beerStyle(BeerStyleEnum.PALE_ALE)
-                    .upc(BEER_2_UPC)
-                    .price(new BigDecimal(BigInteger.valueOf(random.nextInt(10000)), 2))
-                    .quantityOnHand(random.nextInt(5000))
-                    .build())
-                    .block();
-
-            beerRepository.save(Beer.builder()
-                    .beerName("No Hammers On The Bar")
-                    .beerStyle(BeerStyleEnum.WHEAT)
-                    .upc(BEER_3_UPC)
-                    .price(new BigDecimal(BigInteger.valueOf(random.nextInt(10000)), 2))
-                    .quantityOnHand(random.nextInt(5000))
-                    .build())
-                    .block();
-
-
-            beerRepository.save(Beer.builder()
-                    .beerName("Blessed")
-                    .beerStyle(BeerStyleEnum.STOUT)
-                    .upc(BEER_4_UPC)
-                    .price(new BigDecimal(BigInteger.valueOf(random.nextInt(10000)), 2))
-                    .quantityOnHand(random.nextInt(5000))
-                    .build())
-                    .block();
-
-            beerRepository.save(Beer.builder()
-                    .beerName("Adjunct Trail")
-                    .beerStyle(BeerStyleEnum.STOUT)
-                    .upc(BEER_5_UPC)
-                    .price(new BigDecimal(BigInteger.valueOf(random.nextInt(10000)), 2))
-                    .quantityOnHand(random.nextInt(5000))
-                    .build())
-                    .block();
-
-            beerRepository.save(Beer.builder()
-                    .beerName("Very GGGreenn")
-                    .beerStyle(BeerStyleEnum.IPA)
-                    .upc(BEER_6_UPC)
-                    .price(new BigDecimal(BigInteger.valueOf(random.nextInt(10000)), 2))
-                    .quantityOnHand(random.nextInt(5000))
-                    .build())
-                    .block();
-
-            beerRepository.save(Beer.builder()
-                    .beerName("Double Barrel Hunahpu's")
-                    .beerStyle(BeerStyleEnum.STOUT)
-                    .upc(BEER_7_UPC)
-                    .price(new BigDecimal(BigInteger.valueOf(random.nextInt(10000)), 2))
-                    .quantityOnHand(random.nextInt(5000))
-                    .build())
-                    .block();
-
-            beerRepository.save(Beer.builder()
-                    .beerName("Very Hazy")
-                    .beerStyle(BeerStyleEnum.IPA)
-                    .upc(BEER_8_UPC)
-                    .price(new BigDecimal(BigInteger.valueOf(random.nextInt(10000)), 2))
-                    .quantityOnHand(random.nextInt(5000))
-                    .build())
-                    .block();
-
-            beerRepository.save(Beer.builder()
-                    .beerName("SR-71")
-                    .beerStyle(BeerStyleEnum.STOUT)
-                    .upc(BEER_9_UPC)
-                    .price(new BigDecimal(BigInteger.valueOf(random.nextInt(10000)), 2))
-                    .quantityOnHand(random.nextInt(5000))
-                    .build())
-                    .block();
-
-            beerRepository.save(Beer.builder()
-                    .beerName("Pliny the Younger")
-                    .beerStyle(BeerStyleEnum.IPA)
-                    .upc(BEER_10_UPC)
-                    .price(new BigDecimal(BigInteger.valueOf(random.nextInt(10000)), 2))
-                    .quantityOnHand(random.nextInt(5000))
-                    .build())
-                    .block();
-
-            beerRepository.save(Beer.builder()
-                    .beerName("Blessed")
-                    .beerStyle(BeerStyleEnum.STOUT)
-                    .upc(BEER_11_UPC)
-                    .price(new BigDecimal(BigInteger.valueOf(random.nextInt(10000)), 2))
-                    .quantityOnHand(random.nextInt(5000))
-                    .build())
-                    .block();
-
-            beerRepository.save(Beer.builder()
-                    .beerName("King Krush")
-                    .beerStyle(BeerStyleEnum.IPA)
-                    .upc(BEER_12_UPC)
-                    .price(new BigDecimal(BigInteger.valueOf(random.nextInt(10000)), 2))
-                    .quantityOnHand(random.nextInt(5000))
-                    .build())
-                    .block();
-
-            beerRepository.save(Beer.builder()
-                    .beerName("PBS Porter")
-                    .beerStyle(BeerStyleEnum.PORTER)
-                    .upc(BEER_13_UPC)
-                    .price(new BigDecimal(BigInteger.valueOf(random.nextInt(10000)), 2))
-                    .quantityOnHand(random.nextInt(5000))
-                    .build())
-                    .block();
-
-            beerRepository.save(Beer.builder()
-                    .beerName("Pinball Porter")
-                    .beerStyle(BeerStyleEnum.STOUT)
-                    .upc(BEER_14_UPC)
-                    .price(new BigDecimal(BigInteger.valueOf(random.nextInt(10000)), 2))
-                    .quantityOnHand(random.nextInt(5000))
-                    .build())
-                    .block();
-
-            beerRepository.save(Beer.builder()
-                    .beerName("Golden Budda")
-                    .beerStyle(BeerStyleEnum.STOUT)
-                    .upc(BEER_15_UPC)
-                    .price(new BigDecimal(BigInteger.valueOf(random.nextInt(10000)), 2))
-                    .quantityOnHand(random.nextInt(5000))
-                    .build())
-                    .block();
-
-            beerRepository.save(Beer.builder()
-                    .beerName("Grand Central Red")
-                    .beerStyle(BeerStyleEnum.LAGER)
-                    .upc(BEER_16_UPC)
-                    .price(new BigDecimal(BigInteger.valueOf(random.nextInt(10000)), 2))
-                    .quantityOnHand(random.nextInt(5000))
-                    .build())
-                    .block();
-
-            beerRepository.save(Beer.builder()
-                    .beerName("Pac-Man")
-                    .beerStyle(BeerStyleEnum.STOUT)
-                    .upc(BEER_17_UPC)
-                    .price(new BigDecimal(BigInteger.valueOf(random.nextInt(10000)), 2))
-                    .quantityOnHand(random.nextInt(5000))
-                    .build())
-                    .block();
-
-            beerRepository.save(Beer.builder()
-                    .beerName("Ro Sham Bo")
-                    .beerStyle(BeerStyleEnum.IPA)
-                    .upc(BEER_18_UPC)
-                    .price(new BigDecimal(BigInteger.valueOf(random.nextInt(10000)), 2))
-                    .quantityOnHand(random.nextInt(5000))
-                    .build())
-                    .block();
-
-            beerRepository.save(Beer.builder()
-                    .beerName("Summer Wheatly")
-                    .beerStyle(BeerStyleEnum.WHEAT)
-                    .upc(BEER_19_UPC)
-                    .price(new BigDecimal(BigInteger.valueOf(random.nextInt(10000)), 2))
-                    .quantityOnHand(random.nextInt(5000))
-                    .build())
-                    .block();
-
-            beerRepository.save(Beer.builder()
-                    .beerName("Java Jill")
-                    .beerStyle(BeerStyleEnum.LAGER)
-                    .upc(BEER_20_UPC)
-                    .price(new BigDecimal(BigInteger.valueOf(random.nextInt(10000)), 2))
-                    .quantityOnHand(random.nextInt(5000))
-                    .build())
-                    .block();
+    public boolean isDone() {
+        return done;
+    }
 
-            beerRepository.save(Beer.builder()
-                    .beerName("Bike Trail Pale")
-                    .beerStyle(BeerStyleEnum.PALE_ALE)
-                    .upc(BEER_21_UPC)
-                    .price(new BigDecimal(BigInteger.valueOf(random.nextInt(10000)), 2))
-                    .quantityOnHand(random.nextInt(5000))
-                    .build())
-                    .block();
+    /**
+     * Why loading failed, null while loading or once done.
+     */
+    public Throwable getFailure() {
+        return failure;
+    }
 
-            beerRepository.save(Beer.builder()
-                    .beerName("N.Z.P")
-                    .beerStyle(BeerStyleEnum.IPA)
-                    .upc(BEER_22_UPC)
-                    .price(new BigDecimal(BigInteger.valueOf(random.nextInt(10000)), 2))
-                    .quantityOnHand(random.nextInt(5000))
-                    .build())
-                    .block();
+    /**
+     * How long each phase took, in milliseconds and in the order they run. Phases not yet done are left out.
+     */
+    public Map<String, Long> getPhaseMillis() {
+        Map<String, Long> phaseMillis = new LinkedHashMap<>();
 
-            beerRepository.save(Beer.builder()
-                    .beerName("Stawberry Blond")
-                    .beerStyle(BeerStyleEnum.WHEAT)
-                    .upc(BEER_23_UPC)
-                    .price(new BigDecimal(BigInteger.valueOf(random.nextInt(10000)), 2))
-                    .quantityOnHand(random.nextInt(5000))
-                    .build())
-                    .block();
+        Duration migrationTime = schemaInitializer.getMigrationTime();
+        if (migrationTime != null) {
+            phaseMillis.put(SCHEMA_PHASE, migrationTime.toMillis());
+        }
+        for (String phase : Arrays.asList(SEEDING_PHASE, SEARCH_INDEX_PHASE)) {
+            Duration phaseTime = phaseTimes.get(phase);
+            if (phaseTime != null) {
+                phaseMillis.put(phase, phaseTime.toMillis());
+            }
+        }
+        return phaseMillis;
+    }
 
-            beerRepository.save(Beer.builder()
-                    .beerName("Loco")
-                    .beerStyle(BeerStyleEnum.PORTER)
-                    .upc(BEER_24_UPC)
-                    .price(new BigDecimal(BigInteger.valueOf(random.nextInt(10000)), 2))
-                    .quantityOnHand(random.nextInt(5000))
-                    .build())
-                    .block();
+    /**
+     * Emits the number of beers loaded, 0 when the database already had beers, once loading is done.
+     */
+    public Mono<Long> loaded() {
+        return loaded;
+    }
 
-            beerRepository.save(Beer.builder()
-                    .beerName("Spocktoberfest")
-                    .beerStyle(BeerStyleEnum.STOUT)
-                    .upc(BEER_25_UPC)
-                    .price(new BigDecimal(BigInteger.valueOf(random.nextInt(10000)), 2))
-                    .quantityOnHand(random.nextInt(5000))
-                    .build())
-                    .block();
+    private Mono<Long> loadBeerObjects() {
+        return Mono.defer(() -> {
+            long start = System.nanoTime();
+
+            return beerRepository.count()
+                    .flatMap(count -> {
+                        log.debug("Loading initial data. Count is: {}", count);
+
+                        if (count > 0) {
+                            return Mono.just(0L);
+                        }
+
+                        // seed beers first and in one batch, so they keep ids 1 to 30
+                        return beerRepository.insertAll(seedBeers()).count()
+                                .flatMap(seeded -> loadSyntheticBeers().map(synthetic -> seeded + synthetic))
+                                .doOnNext(loadedCount -> {
+                                    cacheManager.getCache(BEER_LIST_CACHE).clear();
+                                    cacheManager.getCache(BEER_COUNT_CACHE).clear();
+                                });
+                    })
+                    .doOnNext(loadedCount -> log.info("Beer Records loaded: {} in {} ms", loadedCount,
+                            phaseDone(SEEDING_PHASE, start).toMillis()));
+        });
+    }
 
-            beerRepository.save(Beer.builder()
-                    .beerName("Beach Blond Ale")
-                    .beerStyle(BeerStyleEnum.ALE)
-                    .upc(BEER_26_UPC)
-                    .price(new BigDecimal(BigInteger.valueOf(random.nextInt(10000)), 2))
-                    .quantityOnHand(random.nextInt(5000))
-                    .build())
-                    .block();
+    private Mono<Void> buildSearchIndex() {
+        return Mono.defer(() -> {
+            long start = System.nanoTime();
 
-            beerRepository.save(Beer.builder()
-                    .beerName("Bimini Twist IPA")
-                    .beerStyle(BeerStyleEnum.IPA)
-                    .upc(BEER_27_UPC)
-                    .price(new BigDecimal(BigInteger.valueOf(random.nextInt(10000)), 2))
-                    .quantityOnHand(random.nextInt(5000))
-                    .build())
-                    .block();
+            return beerRepository.findAll()
+                    .doOnNext(beer -> searchIndex.index(beer.getId(), beer.getVersion(), beer.getBeerName(), beer.getUpc()))
+                    .then()
+                    .doOnSuccess(done -> log.info("Search index built over {} beers in {} ms", searchIndex.size(),
+                            phaseDone(SEARCH_INDEX_PHASE, start).toMillis()));
+        });
+    }
 
-            beerRepository.save(Beer.builder()
-                    .beerName("Rod Bender Red Ale")
-                    .beerStyle(BeerStyleEnum.ALE)
-                    .upc(BEER_28_UPC)
-                    .price(new BigDecimal(BigInteger.valueOf(random.nextInt(10000)), 2))
-                    .quantityOnHand(random.nextInt(5000))
-                    .build())
-                    .block();
+    private Duration phaseDone(String phase, long start) {
+        Duration phaseTime = Duration.ofNanos(System.nanoTime() - start);
+        phaseTimes.put(phase, phaseTime);
+        return phaseTime;
+    }
 
-            beerRepository.save(Beer.builder()
-                    .beerName("Floating Dock")
-                    .beerStyle(BeerStyleEnum.SAISON)
-                    .upc(BEER_29_UPC)
-                    .price(new BigDecimal(BigInteger.valueOf(random.nextInt(10000)), 2))
-                    .quantityOnHand(random.nextInt(5000))
-                    .build())
-                    .block();
+    private Mono<Long> loadSyntheticBeers() {
+        return Flux.range(0, syntheticBeers)
+                .map(generator::beer)
+                .buffer(batchSize)
+                .flatMap(batch -> beerRepository.insertAll(batch).count().subscribeOn(Schedulers.boundedElastic()), concurrency)
+                .reduce(0L, Long::sum);
+    }
 
-            beerRepository.save(Beer.builder()
-                    .beerName("El Hefe")
-                    .beerStyle(BeerStyleEnum.WHEAT)
-                    .upc(BEER_30_UPC)
-                    .price(new BigDecimal(BigInteger.valueOf(random.nextInt(10000)), 2))
-                    .quantityOnHand(random.nextInt(5000))
-                    .build())
-                    .block();
+    private static List<Beer> seedBeers() {
+        Random random = new Random();
+
+        return Arrays.asList(
+                seedBeer("Mango Bobs", BeerStyleEnum.ALE, BEER_1_UPC, random),
+                seedBeer("Galaxy Cat", BeerStyleEnum.PALE_ALE, BEER_2_UPC, random),
+                seedBeer("No Hammers On The Bar", BeerStyleEnum.WHEAT, BEER_3_UPC, random),
+                seedBeer("Blessed", BeerStyleEnum.STOUT, BEER_4_UPC, random),
+                seedBeer("Adjunct Trail", BeerStyleEnum.STOUT, BEER_5_UPC, random),
+                seedBeer("Very GGGreenn", BeerStyleEnum.IPA, BEER_6_UPC, random),
+                seedBeer("Double Barrel Hunahpu's", BeerStyleEnum.STOUT, BEER_7_UPC, random),
+                seedBeer("Very Hazy", BeerStyleEnum.IPA, BEER_8_UPC, random),
+                seedBeer("SR-71", BeerStyleEnum.STOUT, BEER_9_UPC, random),
+                seedBeer("Pliny the Younger", BeerStyleEnum.IPA, BEER_10_UPC, random),
+                seedBeer("Blessed", BeerStyleEnum.STOUT, BEER_11_UPC, random),
+                seedBeer("King Krush", BeerStyleEnum.IPA, BEER_12_UPC, random),
+                seedBeer("PBS Porter", BeerStyleEnum.PORTER, BEER_13_UPC, random),
+                seedBeer("Pinball Porter", BeerStyleEnum.STOUT, BEER_14_UPC, random),
+                seedBeer("Golden Budda", BeerStyleEnum.STOUT, BEER_15_UPC, random),
+                seedBeer("Grand Central Red", BeerStyleEnum.LAGER, BEER_16_UPC, random),
+                seedBeer("Pac-Man", BeerStyleEnum.STOUT, BEER_17_UPC, random),
+                seedBeer("Ro Sham Bo", BeerStyleEnum.IPA, BEER_18_UPC, random),
+                seedBeer("Summer Wheatly", BeerStyleEnum.WHEAT, BEER_19_UPC, random),
+                seedBeer("Java Jill", BeerStyleEnum.LAGER, BEER_20_UPC, random),
+                seedBeer("Bike Trail Pale", BeerStyleEnum.PALE_ALE, BEER_21_UPC, random),
+                seedBeer("N.Z.P", BeerStyleEnum.IPA, BEER_22_UPC, random),
+                seedBeer("Stawberry Blond", BeerStyleEnum.WHEAT, BEER_23_UPC, random),
+                seedBeer("Loco", BeerStyleEnum.PORTER, BEER_24_UPC, random),
+                seedBeer("Spocktoberfest", BeerStyleEnum.STOUT, BEER_25_UPC, random),
+                seedBeer("Beach Blond Ale", BeerStyleEnum.ALE, BEER_26_UPC, random),
+                seedBeer("Bimini Twist IPA", BeerStyleEnum.IPA, BEER_27_UPC, random),
+                seedBeer("Rod Bender Red Ale", BeerStyleEnum.ALE, BEER_28_UPC, random),
+                seedBeer("Floating Dock", BeerStyleEnum.SAISON, BEER_29_UPC, random),
+                seedBeer("El Hefe", BeerStyleEnum.WHEAT, BEER_30_UPC, random)
+        );
+    }
 
-            log.debug("Beer Records loaded: {}", beerRepository.count().block());
-        }
+    private static Beer seedBeer(String beerName, BeerStyleEnum beerStyle, String upc, Random random) {
+        return Beer.builder()
+                .beerName(beerName)
+                .beerStyle(beerStyle)
+                .upc(upc)
+                .price(new BigDecimal(BigInteger.valueOf(random.nextInt(10000)), 2))
+                .quantityOnHand(random.nextInt(5000))
+                .build();
     }
 }
@@ -0,0 +1,36 @@
+package guru.springframework.sfgrestbrewery.bootstrap;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.ReactiveHealthIndicator;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+/**
+ * Out of service until the schema is migrated and the initial beers are loaded and indexed, so the
+ * readiness probe keeps traffic away from an instance that is still starting up in the background.
+ * The phases detail has how long each of those took, in milliseconds, once it is done.
+ */
+@Component
+@RequiredArgsConstructor
+public class BeerLoaderHealthIndicator implements ReactiveHealthIndicator {
+
+    private final BeerLoader beerLoader;
+
+    @Override
+    public Mono<Health> health() {
+        return Mono.fromSupplier(() -> {
+            Throwable failure = beerLoader.getFailure();
+
+            if (failure != null) {
+                return Health.down()
+                        .withDetail("error", failure.getClass().getName() + ": " + failure.getMessage())
+                        .withDetail("phases", beerLoader.getPhaseMillis())
+                        .build();
+            }
+            return beerLoader.isDone()
+                    ? Health.up().withDetail("phases", beerLoader.getPhaseMillis()).build()
+                    : Health.outOfService().withDetail("loading", true).withDetail("phases", beerLoader.getPhaseMillis()).build();
+        });
+    }
+}
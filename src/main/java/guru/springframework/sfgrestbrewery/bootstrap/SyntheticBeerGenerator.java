@@ -0,0 +1,109 @@
+package guru.springframework.sfgrestbrewery.bootstrap;
+
+import guru.springframework.sfgrestbrewery.domain.Beer;
+import guru.springframework.sfgrestbrewery.web.model.BeerStyleEnum;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.SplittableRandom;
+
+/**
+ * Generates a reproducible catalogue of made up beers for performance environments.
+ *
+ * Styles follow a skewed mix, IPAs and lagers common and gose rare, names are drawn from word lists so
+ * popular names repeat across breweries, and prices are log-normal around $12. Beer n is the same for a
+ * given seed whatever order or batch it is generated in, so batches can be generated and written in parallel.
+ */
+public class SyntheticBeerGenerator {
+
+    private static final BeerStyleEnum[] STYLES = BeerStyleEnum.values();
+
+    // relative share of each style, in BeerStyleEnum order
+    private static final int[] STYLE_WEIGHTS = {18, 6, 9, 1, 5, 12, 7, 25, 13, 4};
+
+    private static final String[] ADJECTIVES = {"Hazy", "Golden", "Dark", "Wild", "Lucky", "Double", "Old", "Crooked",
+            "Salty", "Rusty", "Midnight", "Tropical", "Smoky", "Bitter", "Lazy", "Electric", "Foggy", "Velvet",
+            "Red", "Black", "Hoppy", "Sunny", "Frozen", "Royal"};
+
+    private static final String[] NOUNS = {"Cat", "Trail", "Dock", "Hammer", "Fox", "Harbor", "Anchor", "River",
+            "Moose", "Lantern", "Barrel", "Monk", "Owl", "Comet", "Ghost", "Pilot", "Orchard", "Canyon", "Raven",
+            "Bandit", "Tide", "Bear", "Mule", "Wave"};
+
+    private static final String[][] STYLE_WORDS = {
+            {"Lager", "Helles", "Dunkel"},
+            {"Pils", "Pilsner"},
+            {"Stout", "Imperial Stout", "Milk Stout"},
+            {"Gose"},
+            {"Porter", "Baltic Porter"},
+            {"Ale", "Red Ale", "Brown Ale"},
+            {"Wheat", "Hefeweizen", "Witbier"},
+            {"IPA", "Double IPA", "Hazy IPA", "Session IPA"},
+            {"Pale Ale", "APA"},
+            {"Saison", "Farmhouse Ale"}
+    };
+
+    // synthetic upcs are 2 followed by the beer number, clear of the seed catalogue's upcs
+    private static final String UPC_PREFIX = "2";
+
+    private final long seed;
+    private final int styleWeightTotal;
+
+    public SyntheticBeerGenerator(long seed) {
+        this.seed = seed;
+
+        int total = 0;
+        for (int weight : STYLE_WEIGHTS) {
+            total += weight;
+        }
+        this.styleWeightTotal = total;
+    }
+
+    /**
+     * The n-th synthetic beer, n from 0, not yet saved.
+     */
+    public Beer beer(long n) {
+        SplittableRandom random = new SplittableRandom(seed ^ (n * 0x9E3779B97F4A7C15L));
+        int style = style(random);
+
+        return Beer.builder()
+                .beerName(name(random, style))
+                .beerStyle(STYLES[style])
+                .upc(UPC_PREFIX + String.format("%012d", n))
+                .price(price(random))
+                .quantityOnHand(random.nextInt(5000))
+                .build();
+    }
+
+    private int style(SplittableRandom random) {
+        int pick = random.nextInt(styleWeightTotal);
+
+        for (int i = 0; i < STYLE_WEIGHTS.length; i++) {
+            pick -= STYLE_WEIGHTS[i];
+            if (pick < 0) {
+                return i;
+            }
+        }
+        return STYLE_WEIGHTS.length - 1;
+    }
+
+    private static String name(SplittableRandom random, int style) {
+        // squaring the draw favours the start of each list, so some names are far more common than others
+        String adjective = ADJECTIVES[skewed(random, ADJECTIVES.length)];
+        String noun = NOUNS[skewed(random, NOUNS.length)];
+        String[] styleWords = STYLE_WORDS[style];
+
+        return adjective + " " + noun + " " + styleWords[random.nextInt(styleWords.length)];
+    }
+
+    private static int skewed(SplittableRandom random, int bound) {
+        double draw = random.nextDouble();
+        return (int) (draw * draw * bound);
+    }
+
+    private static BigDecimal price(SplittableRandom random) {
+        double gaussian = Math.sqrt(-2 * Math.log(1 - random.nextDouble())) * Math.cos(2 * Math.PI * random.nextDouble());
+        double price = Math.min(Math.max(12 * Math.exp(0.35 * gaussian), 3), 99.99);
+
+        return BigDecimal.valueOf(price).setScale(2, RoundingMode.HALF_UP);
+    }
+}
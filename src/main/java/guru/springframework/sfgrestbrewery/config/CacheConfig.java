@@ -0,0 +1,42 @@
+package guru.springframework.sfgrestbrewery.config;
+
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.cache.CacheManagerCustomizer;
+import org.springframework.cache.annotation.EnableCaching;
+import org.springframework.cache.caffeine.CaffeineCacheManager;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+
+/**
+ * Caffeine backed caches, sized and expired via the spring.cache.* properties.
+ *
+ * The beer service works with the caches directly rather than through @Cacheable,
+ * as the annotations would cache the cold Mono instead of the resolved value.
+ */
+@EnableCaching
+@Configuration(proxyBeanMethods = false)
+public class CacheConfig {
+
+    public static final String BEER_CACHE = "beerCache";
+    public static final String BEER_UPC_CACHE = "beerUpcCache";
+    public static final String BEER_LIST_CACHE = "beerListCache";
+    public static final String BEER_COUNT_CACHE = "beerCountCache";
+
+    /**
+     * Row counts per list filter get their own, much shorter, expiry than the spec shared by the other caches.
+     */
+    @Bean
+    CacheManagerCustomizer<CaffeineCacheManager> beerCountCacheCustomizer(
+            @Value("${sfg.brewery.cache.beer-count.ttl:30s}") Duration ttl,
+            @Value("${sfg.brewery.cache.beer-count.maximum-size:1000}") long maximumSize) {
+
+        return cacheManager -> cacheManager.registerCustomCache(BEER_COUNT_CACHE, Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(ttl)
+                .recordStats()
+                .build());
+    }
+}
@@ -1,30 +1,83 @@
 package guru.springframework.sfgrestbrewery.config;
 
+import io.r2dbc.pool.ConnectionPoolConfiguration;
 import io.r2dbc.spi.ConnectionFactory;
-import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.LazyInitializationExcludeFilter;
+import org.springframework.boot.autoconfigure.r2dbc.ConnectionFactoryBuilder;
+import org.springframework.boot.autoconfigure.r2dbc.EmbeddedDatabaseConnection;
+import org.springframework.boot.autoconfigure.r2dbc.R2dbcProperties;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.core.io.Resource;
-import org.springframework.r2dbc.connection.init.ConnectionFactoryInitializer;
-import org.springframework.r2dbc.connection.init.ResourceDatabasePopulator;
+import org.springframework.data.r2dbc.config.EnableR2dbcAuditing;
+import org.springframework.data.r2dbc.convert.R2dbcCustomConversions;
+import org.springframework.data.r2dbc.dialect.DialectResolver;
+import org.springframework.r2dbc.core.DatabaseClient;
 
-@Configuration
+import java.time.Duration;
+
+@EnableR2dbcAuditing
+@Configuration(proxyBeanMethods = false)
 public class Config {
 
-    @Value("classpath:/schema.sql")
-    Resource resource;
+    public static final String MIGRATIONS_LOCATION = "classpath:/db/migration/V*__*.sql";
 
-    @Bean
-    ConnectionFactoryInitializer connectionFactoryInitializer(ConnectionFactory connectionFactory){
+    @Value(MIGRATIONS_LOCATION)
+    Resource[] migrations;
+
+    /**
+     * Pooled connections over the database configured by spring.r2dbc.*, sized by sfg.brewery.r2dbc.pool.*.
+     * Disposed explicitly rather than through the inferred close(), which later pools turn into a Publisher.
+     */
+    @Bean(destroyMethod = "dispose")
+    MeteredConnectionPool connectionFactory(R2dbcProperties properties,
+                                            @Value("${sfg.brewery.r2dbc.pool.initial-size:4}") int initialSize,
+                                            @Value("${sfg.brewery.r2dbc.pool.max-size:10}") int maxSize,
+                                            @Value("${sfg.brewery.r2dbc.pool.max-acquire-time:5s}") Duration maxAcquireTime,
+                                            @Value("${sfg.brewery.r2dbc.pool.max-idle-time:30m}") Duration maxIdleTime,
+                                            @Value("${sfg.brewery.r2dbc.pool.validation-query:SELECT 1}") String validationQuery) {
 
-        ConnectionFactoryInitializer initializer = new ConnectionFactoryInitializer();
-        initializer.setConnectionFactory(connectionFactory);
-        initializer.setDatabasePopulator(new ResourceDatabasePopulator(resource));
-        return initializer;
+        ConnectionFactory connectionFactory = ConnectionFactoryBuilder
+                .of(properties, () -> EmbeddedDatabaseConnection.get(getClass().getClassLoader()))
+                .build();
 
+        ConnectionPoolConfiguration configuration = ConnectionPoolConfiguration.builder(connectionFactory)
+                .name("connectionFactory")
+                .initialSize(initialSize)
+                .maxSize(maxSize)
+                .maxAcquireTime(maxAcquireTime)
+                .maxIdleTime(maxIdleTime)
+                .validationQuery(validationQuery)
+                .build();
+
+        return new MeteredConnectionPool(configuration, "connectionFactory");
     }
 
+    /**
+     * The dialect's conversions plus UUIDs to and from binary(16) columns.
+     */
+    @Bean
+    R2dbcCustomConversions r2dbcCustomConversions(DatabaseClient databaseClient) {
+        return R2dbcCustomConversions.of(DialectResolver.getDialect(databaseClient.getConnectionFactory()),
+                UuidBinaryConverters.converters());
+    }
 
+    /**
+     * Migrates the schema, in the background when sfg.brewery.startup.async-init is set.
+     */
+    @Bean
+    SchemaInitializer schemaInitializer(ConnectionFactory connectionFactory,
+                                        @Value("${sfg.brewery.startup.async-init:false}") boolean asyncInit) {
+        return new SchemaInitializer(connectionFactory, new VersionedSchemaPopulator(migrations), asyncInit);
+    }
+
+    /**
+     * Keeps schema migration starting with the context when spring.main.lazy-initialization is on.
+     */
+    @Bean
+    static LazyInitializationExcludeFilter schemaInitializerLazyInitExclude() {
+        return LazyInitializationExcludeFilter.forBeanTypes(SchemaInitializer.class);
+    }
 
 }
@@ -0,0 +1,70 @@
+package guru.springframework.sfgrestbrewery.config;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.r2dbc.pool.ConnectionPool;
+import io.r2dbc.pool.ConnectionPoolConfiguration;
+import io.r2dbc.spi.Connection;
+import io.r2dbc.spi.R2dbcTimeoutException;
+import reactor.core.publisher.Mono;
+
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Connection pool that also times how long callers wait for a connection.
+ *
+ * Stays a ConnectionPool so the actuator still publishes the acquired/idle/pending gauges,
+ * the r2dbc.pool.acquire timer is added when the pool is bound to the meter registry. It is tagged
+ * with the outcome, so waits ending in max-acquire-time, an error or the caller giving up are seen too.
+ */
+public class MeteredConnectionPool extends ConnectionPool implements MeterBinder {
+
+    enum Outcome {
+        SUCCESS, TIMEOUT, ERROR, CANCELLED
+    }
+
+    private final String name;
+
+    private volatile Map<Outcome, Timer> acquireTimers;
+
+    public MeteredConnectionPool(ConnectionPoolConfiguration configuration, String name) {
+        super(configuration);
+        this.name = name;
+    }
+
+    @Override
+    public Mono<Connection> create() {
+        return Mono.defer(() -> {
+            Map<Outcome, Timer> timers = acquireTimers;
+
+            if (timers == null) {
+                return super.create();
+            }
+
+            Timer.Sample sample = Timer.start();
+            return super.create()
+                    .doOnSuccess(connection -> sample.stop(timers.get(Outcome.SUCCESS)))
+                    .doOnError(e -> sample.stop(timers.get(e instanceof R2dbcTimeoutException ? Outcome.TIMEOUT : Outcome.ERROR)))
+                    .doOnCancel(() -> sample.stop(timers.get(Outcome.CANCELLED)));
+        });
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Map<Outcome, Timer> timers = new EnumMap<>(Outcome.class);
+
+        for (Outcome outcome : Outcome.values()) {
+            timers.put(outcome, Timer.builder("r2dbc.pool.acquire")
+                    .description("Time spent waiting for a connection from the pool")
+                    .tag("name", name)
+                    .tag("outcome", outcome.name().toLowerCase(Locale.ROOT))
+                    .publishPercentiles(0.5, 0.99)
+                    .register(registry));
+        }
+
+        acquireTimers = timers;
+    }
+}
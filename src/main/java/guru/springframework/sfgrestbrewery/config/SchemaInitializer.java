@@ -0,0 +1,69 @@
+package guru.springframework.sfgrestbrewery.config;
+
+import io.r2dbc.spi.ConnectionFactory;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.r2dbc.connection.init.DatabasePopulator;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Duration;
+
+/**
+ * Applies the schema migrations at startup, before the context is refreshed when init is synchronous.
+ *
+ * With async init the migrations run in the background and startup carries on, anything needing
+ * the schema waits on initialized().
+ */
+@Slf4j
+public class SchemaInitializer implements InitializingBean {
+
+    private final ConnectionFactory connectionFactory;
+    private final DatabasePopulator populator;
+    private final boolean async;
+
+    private volatile Mono<Void> initialized;
+    private volatile Duration migrationTime;
+
+    public SchemaInitializer(ConnectionFactory connectionFactory, DatabasePopulator populator, boolean async) {
+        this.connectionFactory = connectionFactory;
+        this.populator = populator;
+        this.async = async;
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        Mono<Void> populate = Mono.defer(() -> {
+            long start = System.nanoTime();
+
+            return populator.populate(connectionFactory)
+                    .doOnSuccess(done -> {
+                        migrationTime = Duration.ofNanos(System.nanoTime() - start);
+                        log.info("Schema initialized in {} ms", migrationTime.toMillis());
+                    });
+        });
+
+        if (!async) {
+            populate.block();
+            initialized = Mono.empty();
+            return;
+        }
+
+        initialized = populate.subscribeOn(Schedulers.boundedElastic()).cache();
+        initialized.subscribe(null, e -> log.error("Schema initialization failed", e));
+    }
+
+    /**
+     * Completes once the schema is in place, errors if the migrations failed.
+     */
+    public Mono<Void> initialized() {
+        return initialized;
+    }
+
+    /**
+     * How long the migrations took, null until they are done.
+     */
+    public Duration getMigrationTime() {
+        return migrationTime;
+    }
+}
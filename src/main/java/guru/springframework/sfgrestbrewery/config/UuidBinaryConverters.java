@@ -0,0 +1,47 @@
+package guru.springframework.sfgrestbrewery.config;
+
+import org.springframework.core.convert.converter.Converter;
+import org.springframework.data.convert.ReadingConverter;
+import org.springframework.data.convert.WritingConverter;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Stores UUIDs as 16 byte binary columns, most significant bits first, rather than as 36 character text.
+ */
+public final class UuidBinaryConverters {
+
+    private UuidBinaryConverters() {
+    }
+
+    public static List<Converter<?, ?>> converters() {
+        return Arrays.asList(UuidToBytesConverter.INSTANCE, BytesToUuidConverter.INSTANCE);
+    }
+
+    @WritingConverter
+    public enum UuidToBytesConverter implements Converter<UUID, byte[]> {
+        INSTANCE;
+
+        @Override
+        public byte[] convert(UUID uuid) {
+            return ByteBuffer.allocate(16)
+                    .putLong(uuid.getMostSignificantBits())
+                    .putLong(uuid.getLeastSignificantBits())
+                    .array();
+        }
+    }
+
+    @ReadingConverter
+    public enum BytesToUuidConverter implements Converter<byte[], UUID> {
+        INSTANCE;
+
+        @Override
+        public UUID convert(byte[] bytes) {
+            ByteBuffer buffer = ByteBuffer.wrap(bytes);
+            return new UUID(buffer.getLong(), buffer.getLong());
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package guru.springframework.sfgrestbrewery.config;
+
+import io.r2dbc.spi.Connection;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.io.Resource;
+import org.springframework.r2dbc.connection.init.DatabasePopulator;
+import org.springframework.r2dbc.connection.init.ResourceDatabasePopulator;
+import org.springframework.r2dbc.connection.init.ScriptException;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+/**
+ * Applies V{version}__{description}.sql scripts in version order, skipping the ones already
+ * recorded in the schema_version table.
+ */
+@Slf4j
+public class VersionedSchemaPopulator implements DatabasePopulator {
+
+    private static final Pattern MIGRATION_NAME = Pattern.compile("V(\\d+)__(\\w+)\\.sql");
+
+    private static final String CREATE_SCHEMA_VERSION = "CREATE TABLE IF NOT EXISTS schema_version (" +
+            "version integer NOT NULL PRIMARY KEY, description varchar(255), installed_on timestamp)";
+
+    private final List<Migration> migrations;
+
+    public VersionedSchemaPopulator(Resource... scripts) {
+        this.migrations = Arrays.stream(scripts)
+                .map(Migration::of)
+                .sorted(Comparator.comparingInt(Migration::getVersion))
+                .collect(Collectors.toList());
+    }
+
+    @Override
+    public Mono<Void> populate(Connection connection) throws ScriptException {
+        return Mono.from(connection.createStatement(CREATE_SCHEMA_VERSION).execute())
+                .flatMap(result -> Mono.from(result.getRowsUpdated()))
+                .thenMany(Flux.from(connection.createStatement("SELECT version FROM schema_version").execute()))
+                .flatMap(result -> result.map((row, rowMetadata) -> row.get(0, Integer.class)))
+                .collect(Collectors.toSet())
+                .flatMapMany(applied -> Flux.fromIterable(migrations)
+                        .filter(migration -> !applied.contains(migration.getVersion())))
+                .concatMap(migration -> apply(connection, migration))
+                .then();
+    }
+
+    private Mono<Void> apply(Connection connection, Migration migration) {
+        log.debug("Applying schema migration V{} {}", migration.getVersion(), migration.getDescription());
+
+        return new ResourceDatabasePopulator(migration.getScript()).populate(connection)
+                .then(Mono.from(connection.createStatement("INSERT INTO schema_version VALUES ($1, $2, $3)")
+                        .bind(0, migration.getVersion())
+                        .bind(1, migration.getDescription())
+                        .bind(2, LocalDateTime.now())
+                        .execute()))
+                .flatMap(result -> Mono.from(result.getRowsUpdated()))
+                .then();
+    }
+
+    private static final class Migration {
+
+        private final int version;
+        private final String description;
+        private final Resource script;
+
+        private Migration(int version, String description, Resource script) {
+            this.version = version;
+            this.description = description;
+            this.script = script;
+        }
+
+        static Migration of(Resource script) {
+            Matcher matcher = MIGRATION_NAME.matcher(String.valueOf(script.getFilename()));
+
+            if (!matcher.matches()) {
+                throw new IllegalArgumentException("Not a versioned migration script: " + script);
+            }
+            return new Migration(Integer.parseInt(matcher.group(1)), matcher.group(2).replace('_', ' '), script);
+        }
+
+        int getVersion() {
+            return version;
+        }
+
+        String getDescription() {
+            return description;
+        }
+
+        Resource getScript() {
+            return script;
+        }
+    }
+}
@@ -0,0 +1,19 @@
+package guru.springframework.sfgrestbrewery.config;
+
+import org.springframework.boot.web.embedded.netty.NettyServerCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
+
+/**
+ * Wire level tracing of every request, for debugging only: run with --spring.profiles.active=wiretrace.
+ */
+@Profile("wiretrace")
+@Configuration(proxyBeanMethods = false)
+public class WiretraceConfig {
+
+    @Bean
+    NettyServerCustomizer wiretapCustomizer() {
+        return httpServer -> httpServer.wiretap(true);
+    }
+}
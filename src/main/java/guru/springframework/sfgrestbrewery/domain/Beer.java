@@ -5,7 +5,10 @@ import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
 import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.CreatedDate;
 import org.springframework.data.annotation.Id;
+import org.springframework.data.annotation.LastModifiedDate;
+import org.springframework.data.annotation.Version;
 //import org.hibernate.annotations.CreationTimestamp;
 //import org.hibernate.annotations.GenericGenerator;
 //import org.hibernate.annotations.Type;
@@ -37,7 +40,7 @@ public class Beer {
     @Id
     private Integer id;
 
-//    @Version
+    @Version
     private Long version;
 
     private String beerName;
@@ -49,8 +52,10 @@ public class Beer {
 
 //    @CreationTimestamp
 //    @Column(updatable = false)
+    @CreatedDate
     private LocalDateTime createdDate;
 
 //    @UpdateTimestamp
+    @LastModifiedDate
     private LocalDateTime lastModifiedDate;
 }
@@ -4,6 +4,8 @@ import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
 import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.annotation.Version;
 
 import java.util.UUID;
 
@@ -15,6 +17,13 @@ import java.util.UUID;
 @AllArgsConstructor
 @Builder
 public class Customer {
+
+    @Id
     private UUID id;
+
+    // null until the first save, which tells save() to insert despite the id being assigned up front
+    @Version
+    private Long version;
+
     private String name;
 }
@@ -0,0 +1,47 @@
+package guru.springframework.sfgrestbrewery.functional;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.socket.CloseStatus;
+import org.springframework.web.reactive.socket.WebSocketHandler;
+import org.springframework.web.reactive.socket.WebSocketSession;
+import org.springframework.web.server.ServerWebInputException;
+import org.springframework.web.util.UriComponentsBuilder;
+import reactor.core.Exceptions;
+import reactor.core.publisher.Mono;
+
+/**
+ * The beer change stream over a WebSocket, one JSON text message per change. Takes the same query
+ * parameters as the server sent events route. Messages from the client are ignored.
+ */
+@Component
+@RequiredArgsConstructor
+public class BeerChangesWebSocketHandler implements WebSocketHandler {
+
+    private final BeerHandlerV2 beerHandlerV2;
+    private final ObjectMapper objectMapper;
+
+    @Override
+    public Mono<Void> handle(WebSocketSession session) {
+
+        Mono<Void> changes = Mono.fromSupplier(() -> UriComponentsBuilder.fromUri(session.getHandshakeInfo().getUri())
+                        .build()
+                        .getQueryParams())
+                .flatMap(queryParams -> session.send(beerHandlerV2.beerChanges(queryParams)
+                        .map(change -> session.textMessage(toJson(change)))))
+                .onErrorResume(ServerWebInputException.class, e -> session.close(CloseStatus.POLICY_VIOLATION.withReason(e.getReason())));
+
+        // whichever ends first, the client closing or the stream failing, ends the session
+        return changes.or(session.receive().then());
+    }
+
+    private String toJson(Object value) {
+        try {
+            return objectMapper.writeValueAsString(value);
+        } catch (JsonProcessingException e) {
+            throw Exceptions.propagate(e);
+        }
+    }
+}
@@ -1,19 +1,45 @@
 package guru.springframework.sfgrestbrewery.functional;
 
 
+import guru.springframework.sfgrestbrewery.services.BeerChangeStream;
 import guru.springframework.sfgrestbrewery.services.BeerService;
+import guru.springframework.sfgrestbrewery.services.InventoryService;
+import guru.springframework.sfgrestbrewery.web.controller.BeerValidators;
+import guru.springframework.sfgrestbrewery.web.controller.InsufficientInventoryException;
 import guru.springframework.sfgrestbrewery.web.controller.NotFoundException;
+import guru.springframework.sfgrestbrewery.web.model.BeerBatchResult;
+import guru.springframework.sfgrestbrewery.web.model.BeerChange;
 import guru.springframework.sfgrestbrewery.web.model.BeerDto;
+import guru.springframework.sfgrestbrewery.web.model.BeerLookupResult;
+import guru.springframework.sfgrestbrewery.web.model.BeerStyleEnum;
+import guru.springframework.sfgrestbrewery.web.model.InventoryAdjustment;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.stereotype.Component;
+import org.springframework.util.MultiValueMap;
 import org.springframework.validation.BeanPropertyBindingResult;
 import org.springframework.validation.Errors;
 import org.springframework.validation.Validator;
 import org.springframework.web.reactive.function.server.ServerRequest;
 import org.springframework.web.reactive.function.server.ServerResponse;
 import org.springframework.web.server.ServerWebInputException;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
+import reactor.util.function.Tuple2;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.stream.Collectors;
 
 import static guru.springframework.sfgrestbrewery.functional.BeerRouterConfig.BEER_PATH_V2;
 
@@ -22,22 +48,63 @@ import static guru.springframework.sfgrestbrewery.functional.BeerRouterConfig.BE
 @RequiredArgsConstructor
 public class BeerHandlerV2 {
 
+    static final String CONFLICT = "conflicts with an existing beer, such as one with the same upc";
+    static final String SAVE_FAILED = "could not be saved";
+
     private final BeerService beerService;
+    private final InventoryService inventoryService;
+    private final BeerChangeStream changeStream;
     private final Validator validator;
 
+    @Value("${sfg.brewery.beer.batch-size:500}")
+    private int batchSize;
+
+    @Value("${sfg.brewery.beer.lookup-max-size:200}")
+    private int lookupMaxSize;
+
+    @Value("${sfg.brewery.beer.search-max-results:100}")
+    private int searchMaxResults;
+
     public Mono<ServerResponse> getBeerById(ServerRequest serverRequest) {
 
         Integer beerId = Integer.valueOf(serverRequest.pathVariable("beerId"));
         Boolean showInventory = Boolean.valueOf(serverRequest.queryParam("showInventory").orElse("false"));
 
         return beerService.getById(beerId, showInventory)
-                .flatMap(beerDto ->
-                        ServerResponse.ok().bodyValue(beerDto))  //ok
+                .flatMap(beerDto -> ServerResponse.ok()
+                        .headers(BeerValidators.of(beerDto))
+                        .bodyValue(beerDto))  //ok, or 304 when the client's copy is current
                 .switchIfEmpty(ServerResponse.notFound().build());//404
 
     }
 
 
+    public Mono<ServerResponse> getBeersByIds(ServerRequest serverRequest) {
+
+        List<Integer> beerIds = lookupKeys(serverRequest, "ids").stream()
+                .map(this::toBeerId)
+                .collect(Collectors.toList());
+
+        return ServerResponse.ok().body(beerService.getByIds(beerIds), BeerLookupResult.class);
+    }
+
+    public Mono<ServerResponse> getBeersByUpcs(ServerRequest serverRequest) {
+
+        List<String> upcs = lookupKeys(serverRequest, "upcs");
+
+        return ServerResponse.ok().body(beerService.getByUpcs(upcs), BeerLookupResult.class);
+    }
+
+    public Mono<ServerResponse> searchBeers(ServerRequest serverRequest) {
+
+        String query = serverRequest.queryParam("q")
+                .filter(q -> !q.trim().isEmpty())
+                .orElseThrow(() -> new ServerWebInputException("No search query"));
+        int limit = serverRequest.queryParam("limit").map(this::toLimit).orElse(25);
+
+        return ServerResponse.ok().body(beerService.searchBeers(query, Math.min(limit, searchMaxResults)), BeerDto.class);
+    }
+
     public Mono<ServerResponse> getBeerByUpc(ServerRequest serverRequest) {
 
         String beerUpc = String.valueOf(serverRequest.pathVariable("beerUpc"));
@@ -49,6 +116,45 @@ public class BeerHandlerV2 {
 
     }
 
+    public Mono<ServerResponse> streamBeers(ServerRequest serverRequest) {
+
+        String beerName = serverRequest.queryParam("beerName").orElse(null);
+        BeerStyleEnum beerStyle = serverRequest.queryParam("beerStyle").map(this::toBeerStyle).orElse(null);
+        Boolean showInventory = Boolean.valueOf(serverRequest.queryParam("showInventory").orElse("false"));
+
+        // NDJSON unless the client explicitly asks for server sent events
+        MediaType mediaType = serverRequest.headers().accept().contains(MediaType.TEXT_EVENT_STREAM)
+                ? MediaType.TEXT_EVENT_STREAM : MediaType.APPLICATION_NDJSON;
+
+        return ServerResponse.ok()
+                .contentType(mediaType)
+                .body(beerService.streamBeers(beerName, beerStyle, showInventory), BeerDto.class);
+    }
+
+    public Mono<ServerResponse> streamBeerChanges(ServerRequest serverRequest) {
+
+        return ServerResponse.ok()
+                .contentType(MediaType.TEXT_EVENT_STREAM)
+                .body(beerChanges(serverRequest.queryParams()), BeerChange.class);
+    }
+
+    /**
+     * Stock and price changes of the beers in ?beerIds=, or of all beers, with ?overflow=latest (the
+     * default) or drop for what a subscriber that falls behind is sent. Also serves the WebSocket.
+     */
+    Flux<BeerChange> beerChanges(MultiValueMap<String, String> queryParams) {
+
+        Set<Integer> beerIds = queryParams.getOrDefault("beerIds", Collections.emptyList()).stream()
+                .flatMap(value -> Arrays.stream(value.split(",")))
+                .map(String::trim)
+                .filter(beerId -> !beerId.isEmpty())
+                .map(this::toBeerId)
+                .collect(Collectors.toSet());
+        String overflow = queryParams.getFirst("overflow");
+
+        return changeStream.changes(beerIds, overflow == null ? BeerChangeStream.Overflow.LATEST : toOverflow(overflow));
+    }
+
     public Mono<ServerResponse> saveBeer(ServerRequest serverRequest) {
 
         Mono<BeerDto> beerToSave = serverRequest.bodyToMono(BeerDto.class).doOnNext(this::validate);
@@ -59,6 +165,93 @@ public class BeerHandlerV2 {
                             .noContent()
                             .header("location", BEER_PATH_V2 + "/" + beerDto.getId())
                             .build();
+                })
+                .onErrorResume(DataIntegrityViolationException.class, e -> ServerResponse.status(HttpStatus.CONFLICT).build());
+    }
+
+    public Mono<ServerResponse> saveBeerBatch(ServerRequest serverRequest) {
+
+        Flux<BeerBatchResult> results = serverRequest.bodyToFlux(BeerDto.class)
+                .index()
+                .buffer(batchSize)
+                .concatMap(this::saveBatch);
+
+        return ServerResponse.ok()
+                .contentType(MediaType.APPLICATION_NDJSON)
+                .body(results, BeerBatchResult.class);
+    }
+
+    private Flux<BeerBatchResult> saveBatch(List<Tuple2<Long, BeerDto>> batch) {
+
+        List<BeerBatchResult> invalid = new ArrayList<>();
+        List<Long> validIndexes = new ArrayList<>();
+        List<BeerDto> validBeers = new ArrayList<>();
+
+        batch.forEach(indexedBeer -> {
+            Errors errors = validationErrors(indexedBeer.getT2());
+
+            if (!errors.hasFieldErrors("beerStyle") && !isBeerStyle(indexedBeer.getT2().getBeerStyle())) {
+                errors.rejectValue("beerStyle", "beerStyle.unknown", "unknown beer style");
+            }
+
+            if (errors.hasErrors()) {
+                invalid.add(BeerBatchResult.builder()
+                        .index(indexedBeer.getT1())
+                        .status(BeerBatchResult.Status.INVALID)
+                        .errors(errors.getFieldErrors().stream()
+                                .map(fieldError -> fieldError.getField() + " : " + fieldError.getDefaultMessage())
+                                .collect(Collectors.toList()))
+                        .build());
+            } else {
+                validIndexes.add(indexedBeer.getT1());
+                validBeers.add(indexedBeer.getT2());
+            }
+        });
+
+        if (validBeers.isEmpty()) {
+            return Flux.fromIterable(invalid);
+        }
+
+        Flux<BeerBatchResult> saved = save(validIndexes, validBeers);
+
+        return Flux.fromIterable(invalid)
+                .concatWith(saved)
+                .sort(Comparator.comparing(BeerBatchResult::getIndex));
+    }
+
+    /**
+     * Writes the beers in one transaction, so nothing is reported CREATED until all of them are. When it
+     * fails each half is written in its own, down to the items that fail on their own, so every item
+     * gets its own outcome and a few bad items cost a few more statements rather than one per item.
+     */
+    private Flux<BeerBatchResult> save(List<Long> indexes, List<BeerDto> beers) {
+        return beerService.saveBeers(beers)
+                .collectList()
+                .flatMapIterable(savedBeers -> {
+                    List<BeerBatchResult> created = new ArrayList<>(savedBeers.size());
+                    for (int i = 0; i < savedBeers.size(); i++) {
+                        created.add(BeerBatchResult.builder()
+                                .index(indexes.get(i))
+                                .status(BeerBatchResult.Status.CREATED)
+                                .id(savedBeers.get(i).getId())
+                                .build());
+                    }
+                    return created;
+                })
+                .onErrorResume(e -> {
+                    if (beers.size() > 1) {
+                        int half = beers.size() / 2;
+                        return save(indexes.subList(0, half), beers.subList(0, half))
+                                .concatWith(save(indexes.subList(half, beers.size()), beers.subList(half, beers.size())));
+                    }
+
+                    // the cause can carry SQL, so it stays in the server log
+                    log.warn("Beer batch item {} failed", indexes.get(0), e);
+                    return Flux.just(BeerBatchResult.builder()
+                            .index(indexes.get(0))
+                            .status(BeerBatchResult.Status.FAILED)
+                            .errors(Collections.singletonList(e instanceof DataIntegrityViolationException ? CONFLICT : SAVE_FAILED))
+                            .build());
                 });
     }
 
@@ -73,21 +266,39 @@ public class BeerHandlerV2 {
                             return beerService.updateBeer(beerId, beerToUpdate);
                         }
                 )
-                .flatMap(savedBeerDto -> {
-                    if (savedBeerDto.getId() != null) {
-                        return ServerResponse
-                                .noContent()
-                                .build();
-                    } else {
-                        log.debug("Beer ID not found {} ", beerId);
-                        return ServerResponse
-                                .notFound()
-                                .build();
-                    }
-                });
+                .flatMap(savedBeerDto -> ServerResponse
+                        .noContent()
+                        .build())
+                .onErrorResume(NotFoundException.class, e -> {
+                    log.debug("Beer ID not found {} ", beerId);
+                    return ServerResponse.notFound().build();
+                })
+                .onErrorResume(OptimisticLockingFailureException.class, e -> ServerResponse.status(HttpStatus.CONFLICT).build())
+                .onErrorResume(DataIntegrityViolationException.class, e -> ServerResponse.status(HttpStatus.CONFLICT).build());
     }
 
 
+    public Mono<ServerResponse> reserveInventory(ServerRequest serverRequest) {
+
+        Integer beerId = Integer.valueOf(serverRequest.pathVariable("beerId"));
+
+        return inventoryAdjustment(serverRequest)
+                .flatMap(adjustment -> inventoryService.reserve(beerId, adjustment.getQuantity()))
+                .flatMap(inventory -> ServerResponse.ok().bodyValue(inventory))
+                .onErrorResume(NotFoundException.class, e -> ServerResponse.notFound().build())
+                .onErrorResume(InsufficientInventoryException.class, e -> ServerResponse.status(HttpStatus.CONFLICT).build());
+    }
+
+    public Mono<ServerResponse> releaseInventory(ServerRequest serverRequest) {
+
+        Integer beerId = Integer.valueOf(serverRequest.pathVariable("beerId"));
+
+        return inventoryAdjustment(serverRequest)
+                .flatMap(adjustment -> inventoryService.release(beerId, adjustment.getQuantity()))
+                .flatMap(inventory -> ServerResponse.ok().bodyValue(inventory))
+                .onErrorResume(NotFoundException.class, e -> ServerResponse.notFound().build());
+    }
+
     public Mono<ServerResponse> deleteBeer(ServerRequest serverRequest) {
 
         Integer beerId = Integer.valueOf(serverRequest.pathVariable("beerId"));
@@ -101,12 +312,82 @@ public class BeerHandlerV2 {
 
     }
 
+    private Mono<InventoryAdjustment> inventoryAdjustment(ServerRequest serverRequest) {
+        return serverRequest.bodyToMono(InventoryAdjustment.class)
+                .switchIfEmpty(Mono.error(() -> new ServerWebInputException("No quantity")))
+                .doOnNext(adjustment -> {
+                    Errors errors = new BeanPropertyBindingResult(adjustment, "inventoryAdjustment");
+                    validator.validate(adjustment, errors);
+                    if (errors.hasErrors()) {
+                        throw new ServerWebInputException(errors.toString());
+                    }
+                });
+    }
+
+    // accepts both ?ids=1,2,3 and ?ids=1&ids=2&ids=3
+    private List<String> lookupKeys(ServerRequest serverRequest, String name) {
+        List<String> keys = serverRequest.queryParams().getOrDefault(name, Collections.emptyList()).stream()
+                .flatMap(value -> Arrays.stream(value.split(",")))
+                .map(String::trim)
+                .filter(key -> !key.isEmpty())
+                .collect(Collectors.toList());
+
+        if (keys.isEmpty()) {
+            throw new ServerWebInputException("No " + name + " to look up");
+        }
+        if (keys.size() > lookupMaxSize) {
+            throw new ServerWebInputException("At most " + lookupMaxSize + " " + name + " can be looked up at once");
+        }
+        return keys;
+    }
+
+    private Integer toBeerId(String beerId) {
+        try {
+            return Integer.valueOf(beerId);
+        } catch (NumberFormatException e) {
+            throw new ServerWebInputException("Invalid beer id " + beerId);
+        }
+    }
+
+    private int toLimit(String limit) {
+        try {
+            return Math.max(Integer.parseInt(limit), 1);
+        } catch (NumberFormatException e) {
+            throw new ServerWebInputException("Invalid limit " + limit);
+        }
+    }
+
+    private BeerChangeStream.Overflow toOverflow(String overflow) {
+        try {
+            return BeerChangeStream.Overflow.valueOf(overflow.toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new ServerWebInputException("Unknown overflow " + overflow + ", expected drop or latest");
+        }
+    }
+
+    private BeerStyleEnum toBeerStyle(String beerStyle) {
+        try {
+            return BeerStyleEnum.valueOf(beerStyle);
+        } catch (IllegalArgumentException e) {
+            throw new ServerWebInputException("Unknown beer style " + beerStyle);
+        }
+    }
+
+    private boolean isBeerStyle(String beerStyle) {
+        return Arrays.stream(BeerStyleEnum.values()).anyMatch(style -> style.name().equals(beerStyle));
+    }
+
     private void validate(BeerDto beerDto) {
-        Errors errors = new BeanPropertyBindingResult(BeerDto.class, "beerDto");
-        validator.validate(beerDto, errors);
+        Errors errors = validationErrors(beerDto);
         if (errors.hasErrors()) {
             System.out.println(errors.toString());
             throw new ServerWebInputException(errors.toString());
         }
     }
+
+    private Errors validationErrors(BeerDto beerDto) {
+        Errors errors = new BeanPropertyBindingResult(beerDto, "beerDto");
+        validator.validate(beerDto, errors);
+        return errors;
+    }
 }
@@ -2,26 +2,57 @@ package guru.springframework.sfgrestbrewery.functional;
 
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.web.reactive.HandlerMapping;
+import org.springframework.web.reactive.handler.SimpleUrlHandlerMapping;
 import org.springframework.web.reactive.function.server.RouterFunction;
 import org.springframework.web.reactive.function.server.ServerResponse;
 
+import java.util.Collections;
+
 import static org.springframework.http.MediaType.APPLICATION_JSON;
+import static org.springframework.http.MediaType.APPLICATION_NDJSON;
+import static org.springframework.http.MediaType.TEXT_EVENT_STREAM;
 import static org.springframework.web.reactive.function.server.RequestPredicates.accept;
+import static org.springframework.web.reactive.function.server.RequestPredicates.contentType;
 import static org.springframework.web.reactive.function.server.RouterFunctions.route;
 
-@Configuration
+@Configuration(proxyBeanMethods = false)
 public class BeerRouterConfig {
 
     public static final String BEER_PATH_V2 = "api/v2/beer";
     public static final String BEER_BY_UPC_PATH_V2 = "api/v2/beerUpc";
+    public static final String BEER_STREAM_PATH_V2 = BEER_PATH_V2 + "/stream";
+    public static final String BEER_BATCH_PATH_V2 = BEER_PATH_V2 + "/batch";
+    public static final String BEER_LOOKUP_PATH_V2 = BEER_PATH_V2 + "/lookup";
+    public static final String BEER_BY_UPC_LOOKUP_PATH_V2 = BEER_BY_UPC_PATH_V2 + "/lookup";
+    public static final String BEER_SEARCH_PATH_V2 = BEER_PATH_V2 + "/search";
+    public static final String BEER_RESERVE_PATH_V2 = BEER_PATH_V2 + "/{beerId}/inventory/reserve";
+    public static final String BEER_RELEASE_PATH_V2 = BEER_PATH_V2 + "/{beerId}/inventory/release";
+    public static final String BEER_CHANGES_PATH_V2 = BEER_PATH_V2 + "/changes";
+    public static final String BEER_CHANGES_WEBSOCKET_PATH_V2 = BEER_CHANGES_PATH_V2 + "/ws";
 
     @Bean
     public RouterFunction<ServerResponse> beerRoutesV2(BeerHandlerV2 beerHandlerV2){
-        return route().GET(BEER_PATH_V2+"/{beerId}", accept(APPLICATION_JSON), beerHandlerV2::getBeerById)
+        return route().GET(BEER_STREAM_PATH_V2, accept(APPLICATION_NDJSON, TEXT_EVENT_STREAM), beerHandlerV2::streamBeers)
+                .GET(BEER_LOOKUP_PATH_V2, accept(APPLICATION_JSON), beerHandlerV2::getBeersByIds)
+                .GET(BEER_BY_UPC_LOOKUP_PATH_V2, accept(APPLICATION_JSON), beerHandlerV2::getBeersByUpcs)
+                .GET(BEER_SEARCH_PATH_V2, accept(APPLICATION_JSON), beerHandlerV2::searchBeers)
+                .GET(BEER_CHANGES_PATH_V2, accept(TEXT_EVENT_STREAM), beerHandlerV2::streamBeerChanges)
+                .GET(BEER_PATH_V2+"/{beerId}", accept(APPLICATION_JSON), beerHandlerV2::getBeerById)
                 .GET(BEER_BY_UPC_PATH_V2+"/{beerUpc}", accept(APPLICATION_JSON), beerHandlerV2::getBeerByUpc)
+                .POST(BEER_BATCH_PATH_V2, contentType(APPLICATION_NDJSON, APPLICATION_JSON), beerHandlerV2::saveBeerBatch)
                 .POST(BEER_PATH_V2, accept(APPLICATION_JSON), beerHandlerV2::saveBeer)
+                .POST(BEER_RESERVE_PATH_V2, accept(APPLICATION_JSON), beerHandlerV2::reserveInventory)
+                .POST(BEER_RELEASE_PATH_V2, accept(APPLICATION_JSON), beerHandlerV2::releaseInventory)
                 .PUT(BEER_PATH_V2+"/{beerId}", accept(APPLICATION_JSON), beerHandlerV2::updateBeer)
                 .DELETE(BEER_PATH_V2+"/{beerId}", accept(APPLICATION_JSON), beerHandlerV2::deleteBeer)
                 .build();
     }
+
+    // websockets are not routed through router functions, the handler gets a mapping of its own
+    @Bean
+    public HandlerMapping beerChangesWebSocketMapping(BeerChangesWebSocketHandler beerChangesWebSocketHandler) {
+        return new SimpleUrlHandlerMapping(
+                Collections.singletonMap("/" + BEER_CHANGES_WEBSOCKET_PATH_V2, beerChangesWebSocketHandler), -1);
+    }
 }
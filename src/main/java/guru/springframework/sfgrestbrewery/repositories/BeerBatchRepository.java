@@ -0,0 +1,26 @@
+package guru.springframework.sfgrestbrewery.repositories;
+
+import guru.springframework.sfgrestbrewery.domain.Beer;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Bulk writes that go through R2DBC statement batching rather than a round trip per row.
+ */
+public interface BeerBatchRepository {
+
+    /**
+     * Inserts the beers as one batched statement, emitting them with their generated ids in the order given.
+     */
+    Flux<Beer> insertAll(List<Beer> beers);
+
+    /**
+     * Adds each beer's delta to its quantity on hand as one batched statement. Emits the ids of the beers
+     * whose delta was not applied, as the beer no longer exists or the delta would take its stock below zero.
+     */
+    Mono<Set<Integer>> adjustInventory(Map<Integer, Integer> deltas);
+}
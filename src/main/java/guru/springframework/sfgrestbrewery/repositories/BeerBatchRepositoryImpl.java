@@ -0,0 +1,120 @@
+package guru.springframework.sfgrestbrewery.repositories;
+
+import guru.springframework.sfgrestbrewery.domain.Beer;
+import io.r2dbc.spi.Result;
+import io.r2dbc.spi.Statement;
+import lombok.RequiredArgsConstructor;
+import org.springframework.r2dbc.core.DatabaseClient;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+@RequiredArgsConstructor
+public class BeerBatchRepositoryImpl implements BeerBatchRepository {
+
+    private static final String INSERT_BEER = "INSERT INTO beer " +
+            "(beer_name, beer_style, upc, version, quantity_on_hand, price, created_date, last_modified_date) " +
+            "VALUES ($1, $2, $3, $4, $5, $6, $7, $8)";
+
+    // stock is never taken below zero, whatever the counters in front of it believe
+    private static final String ADJUST_INVENTORY = "UPDATE beer " +
+            "SET quantity_on_hand = COALESCE(quantity_on_hand, 0) + $1 " +
+            "WHERE id = $2 AND COALESCE(quantity_on_hand, 0) + $1 >= 0";
+
+    private final DatabaseClient databaseClient;
+
+    @Override
+    public Flux<Beer> insertAll(List<Beer> beers) {
+
+        if (beers.isEmpty()) {
+            return Flux.empty();
+        }
+
+        return databaseClient.inConnectionMany(connection -> {
+            Statement statement = connection.createStatement(INSERT_BEER).returnGeneratedValues("id");
+
+            for (int i = 0; i < beers.size(); i++) {
+                if (i > 0) {
+                    statement.add();
+                }
+                bind(statement, beers.get(i));
+            }
+
+            // ids come back in binding order. not zipped with the list, as that would cancel
+            // the statement, and any surrounding transaction, just before it completes
+            return Flux.from(statement.execute())
+                    .concatMap(result -> result.map((row, rowMetadata) -> row.get(0, Integer.class)))
+                    .index()
+                    .map(indexedId -> {
+                        Beer beer = beers.get(indexedId.getT1().intValue());
+                        beer.setId(indexedId.getT2());
+                        return beer;
+                    });
+        });
+    }
+
+    @Override
+    public Mono<Set<Integer>> adjustInventory(Map<Integer, Integer> deltas) {
+
+        if (deltas.isEmpty()) {
+            return Mono.just(Collections.emptySet());
+        }
+
+        List<Integer> beerIds = new ArrayList<>(deltas.keySet());
+
+        return databaseClient.inConnection(connection -> {
+            Statement statement = connection.createStatement(ADJUST_INVENTORY);
+
+            for (int i = 0; i < beerIds.size(); i++) {
+                if (i > 0) {
+                    statement.add();
+                }
+                statement.bind(0, deltas.get(beerIds.get(i))).bind(1, beerIds.get(i));
+            }
+
+            // one update count per binding, in binding order
+            return Flux.from(statement.execute())
+                    .concatMap(Result::getRowsUpdated)
+                    .index()
+                    .filter(indexedCount -> indexedCount.getT2() == 0)
+                    .map(indexedCount -> beerIds.get(indexedCount.getT1().intValue()))
+                    .collect(Collectors.toSet());
+        });
+    }
+
+    private void bind(Statement statement, Beer beer) {
+        // what save() fills in through @Version and auditing
+        if (beer.getVersion() == null) {
+            beer.setVersion(0L);
+        }
+        if (beer.getCreatedDate() == null) {
+            beer.setCreatedDate(LocalDateTime.now());
+            beer.setLastModifiedDate(beer.getCreatedDate());
+        }
+
+        bind(statement, 0, beer.getBeerName(), String.class);
+        bind(statement, 1, beer.getBeerStyle() == null ? null : beer.getBeerStyle().name(), String.class);
+        bind(statement, 2, beer.getUpc(), String.class);
+        bind(statement, 3, beer.getVersion(), Long.class);
+        bind(statement, 4, beer.getQuantityOnHand(), Integer.class);
+        bind(statement, 5, beer.getPrice(), BigDecimal.class);
+        bind(statement, 6, beer.getCreatedDate(), LocalDateTime.class);
+        bind(statement, 7, beer.getLastModifiedDate(), LocalDateTime.class);
+    }
+
+    private void bind(Statement statement, int index, Object value, Class<?> type) {
+        if (value == null) {
+            statement.bindNull(index, type);
+        } else {
+            statement.bind(index, value);
+        }
+    }
+}
@@ -2,11 +2,18 @@ package guru.springframework.sfgrestbrewery.repositories;
 
 
 import guru.springframework.sfgrestbrewery.domain.Beer;
+import org.springframework.data.r2dbc.repository.Modifying;
+import org.springframework.data.r2dbc.repository.Query;
 import org.springframework.data.repository.reactive.ReactiveCrudRepository;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.Collection;
 
-public interface BeerRepository extends ReactiveCrudRepository<Beer, Integer> {
+
+public interface BeerRepository extends ReactiveCrudRepository<Beer, Integer>, BeerBatchRepository {
 //    Page<Beer> findAllByBeerName(String beerName, Pageable pageable);
 //
 //    Page<Beer> findAllByBeerStyle(BeerStyleEnum beerStyle, Pageable pageable);
@@ -14,4 +21,17 @@ public interface BeerRepository extends ReactiveCrudRepository<Beer, Integer> {
 //    Page<Beer> findAllByBeerNameAndBeerStyle(String beerName, BeerStyleEnum beerStyle, Pageable pageable);
 
     Mono<Beer> findByUpc(String upc);
+
+    Flux<Beer> findAllByUpcIn(Collection<String> upcs);
+
+    /**
+     * Updates the beer in one statement, only if it is still at the given version when one is passed.
+     * Returns the number of rows changed, 0 when the id is unknown or the version is stale.
+     */
+    @Modifying
+    @Query("UPDATE beer SET beer_name = :beerName, beer_style = :beerStyle, upc = :upc, price = :price, " +
+            "version = version + 1, last_modified_date = :lastModifiedDate " +
+            "WHERE id = :id AND (:version IS NULL OR version = :version)")
+    Mono<Integer> updateBeer(Integer id, Long version, String beerName, String beerStyle, String upc,
+                             BigDecimal price, LocalDateTime lastModifiedDate);
 }
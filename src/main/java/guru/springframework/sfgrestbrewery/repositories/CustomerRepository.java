@@ -0,0 +1,26 @@
+package guru.springframework.sfgrestbrewery.repositories;
+
+import guru.springframework.sfgrestbrewery.domain.Customer;
+import org.springframework.data.r2dbc.repository.Modifying;
+import org.springframework.data.r2dbc.repository.Query;
+import org.springframework.data.repository.reactive.ReactiveCrudRepository;
+import reactor.core.publisher.Mono;
+
+import java.util.UUID;
+
+public interface CustomerRepository extends ReactiveCrudRepository<Customer, UUID> {
+
+    /**
+     * Renames the customer in one statement, returning the number of rows changed, 0 for an unknown id.
+     */
+    @Modifying
+    @Query("UPDATE customer SET name = :name, version = version + 1 WHERE id = :id")
+    Mono<Integer> updateName(UUID id, String name);
+
+    /**
+     * Returns the number of rows deleted, 0 for an unknown id.
+     */
+    @Modifying
+    @Query("DELETE FROM customer WHERE id = :id")
+    Mono<Integer> deleteCustomer(UUID id);
+}
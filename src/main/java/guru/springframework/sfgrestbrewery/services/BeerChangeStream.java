@@ -0,0 +1,215 @@
+package guru.springframework.sfgrestbrewery.services;
+
+import guru.springframework.sfgrestbrewery.web.model.BeerChange;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.FluxSink;
+import reactor.core.publisher.Sinks;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntSupplier;
+
+/**
+ * Live feed of beer stock, price and deletions, published by the services as they make them, so any
+ * number of subscribers can follow the catalogue without a single database query.
+ *
+ * Publishing never waits. A change is left as the beer's pending change and emitted by whichever
+ * publishing thread is already emitting, so changes to different beers do not queue behind each other.
+ *
+ * One multicast sink feeds every subscriber and each subscriber absorbs its own backpressure, so a slow
+ * one loses updates rather than holding up the rest. With LATEST it keeps one change per beer while it is
+ * behind, the changes since merged in, so the last change it is sent for a beer is always current. It
+ * keeps them for at most max-pending-beers beers, changes to more are dropped. With DROP the changes made
+ * while it was behind are gone. Both count what they drop in beer.changes.dropped.
+ */
+@Component
+public class BeerChangeStream {
+
+    public enum Overflow {
+        DROP, LATEST
+    }
+
+    private final Sinks.Many<BeerChange> sink = Sinks.many().multicast().directBestEffort();
+
+    // at most one change a beer waiting to be emitted, and how many publishers want them emitted
+    private final ConcurrentMap<Integer, PendingChange> pending = new ConcurrentHashMap<>();
+    private final AtomicInteger emitters = new AtomicInteger();
+
+    private final int maxPendingBeers;
+
+    private final Counter dropped;
+
+    public BeerChangeStream(MeterRegistry meterRegistry,
+                            @Value("${sfg.brewery.changes.max-pending-beers:10000}") int maxPendingBeers) {
+        this.maxPendingBeers = maxPendingBeers;
+
+        this.dropped = Counter.builder("beer.changes.dropped")
+                .description("Beer changes dropped for subscribers that fell behind")
+                .register(meterRegistry);
+
+        Gauge.builder("beer.changes.subscribers", sink, Sinks.Many::currentSubscriberCount)
+                .description("Subscribers to the beer change stream")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Publishes the beer's stock, read as the change is emitted, so that when changes race the last one
+     * emitted for a beer still carries its current stock.
+     */
+    public void inventoryChanged(Integer beerId, IntSupplier quantityOnHand) {
+        publish(beerId, new PendingChange(quantityOnHand, null, false));
+    }
+
+    public void priceChanged(Integer beerId, BigDecimal price) {
+        publish(beerId, new PendingChange(null, price, false));
+    }
+
+    public void beerDeleted(Integer beerId) {
+        publish(beerId, new PendingChange(null, null, true));
+    }
+
+    /**
+     * Changes from now on, of the given beers or of all of them when beerIds is empty.
+     */
+    public Flux<BeerChange> changes(Set<Integer> beerIds, Overflow overflow) {
+        Flux<BeerChange> changes = sink.asFlux()
+                .filter(change -> beerIds.isEmpty() || beerIds.contains(change.getBeerId()));
+
+        if (overflow == Overflow.DROP) {
+            return changes.onBackpressureDrop(change -> dropped.increment());
+        }
+
+        return Flux.create(emitter -> {
+            LatestPerBeer latest = new LatestPerBeer(emitter);
+            emitter.onRequest(requested -> latest.drain());
+            emitter.onDispose(changes.subscribe(latest::offer, emitter::error, emitter::complete));
+        });
+    }
+
+    private void publish(Integer beerId, PendingChange change) {
+        pending.merge(beerId, change, PendingChange::then);
+
+        // the publisher finding none emitting emits for everyone, the others leave their change to it.
+        // so only one thread ever emits into the sink, which fails rather than waits when two do.
+        // having no subscribers is not an error, the change is simply not seen
+        if (emitters.getAndIncrement() != 0) {
+            return;
+        }
+
+        int missed = 1;
+        do {
+            for (Integer pendingBeerId : pending.keySet()) {
+                PendingChange pendingChange = pending.remove(pendingBeerId);
+                if (pendingChange != null) {
+                    sink.tryEmitNext(pendingChange.toBeerChange(pendingBeerId));
+                }
+            }
+            missed = emitters.addAndGet(-missed);
+        } while (missed != 0);
+    }
+
+    // a deletion replaces whatever came before it, otherwise what the later change leaves null is kept
+    private static BeerChange merge(BeerChange earlier, BeerChange later) {
+        if (Boolean.TRUE.equals(later.getDeleted())) {
+            return later;
+        }
+
+        return BeerChange.builder()
+                .beerId(later.getBeerId())
+                .quantityOnHand(later.getQuantityOnHand() != null ? later.getQuantityOnHand() : earlier.getQuantityOnHand())
+                .price(later.getPrice() != null ? later.getPrice() : earlier.getPrice())
+                .changedDate(later.getChangedDate())
+                .build();
+    }
+
+    @RequiredArgsConstructor
+    private static final class PendingChange {
+
+        private final IntSupplier quantityOnHand;
+        private final BigDecimal price;
+        private final boolean deleted;
+
+        PendingChange then(PendingChange later) {
+            if (later.deleted) {
+                return later;
+            }
+
+            return new PendingChange(later.quantityOnHand != null ? later.quantityOnHand : quantityOnHand,
+                    later.price != null ? later.price : price, false);
+        }
+
+        BeerChange toBeerChange(Integer beerId) {
+            return BeerChange.builder()
+                    .beerId(beerId)
+                    .quantityOnHand(quantityOnHand == null ? null : quantityOnHand.getAsInt())
+                    .price(price)
+                    .deleted(deleted ? Boolean.TRUE : null)
+                    .changedDate(LocalDateTime.now())
+                    .build();
+        }
+    }
+
+    /**
+     * One subscriber's changes not yet sent, one a beer, sent in the order their beers first fell behind.
+     */
+    @RequiredArgsConstructor
+    private final class LatestPerBeer {
+
+        private final FluxSink<BeerChange> emitter;
+
+        private final Queue<Integer> beerIds = new ConcurrentLinkedQueue<>();
+        private final ConcurrentMap<Integer, BeerChange> latest = new ConcurrentHashMap<>();
+        private final AtomicInteger drainers = new AtomicInteger();
+
+        void offer(BeerChange change) {
+            Integer beerId = change.getBeerId();
+
+            if (latest.size() >= maxPendingBeers && !latest.containsKey(beerId)) {
+                dropped.increment();
+                return;
+            }
+
+            // queued only when no change is pending for the beer, so each queued id has exactly one
+            boolean[] queued = new boolean[1];
+            latest.compute(beerId, (id, earlier) -> {
+                queued[0] = earlier == null;
+                return earlier == null ? change : merge(earlier, change);
+            });
+            if (queued[0]) {
+                beerIds.offer(beerId);
+            }
+
+            drain();
+        }
+
+        void drain() {
+            if (drainers.getAndIncrement() != 0) {
+                return;
+            }
+
+            int missed = 1;
+            do {
+                while (emitter.requestedFromDownstream() > 0 && !emitter.isCancelled()) {
+                    Integer beerId = beerIds.poll();
+                    if (beerId == null) {
+                        break;
+                    }
+                    emitter.next(latest.remove(beerId));
+                }
+                missed = drainers.addAndGet(-missed);
+            } while (missed != 0);
+        }
+    }
+}
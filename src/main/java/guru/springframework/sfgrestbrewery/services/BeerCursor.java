@@ -0,0 +1,36 @@
+package guru.springframework.sfgrestbrewery.services;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/**
+ * Opaque page cursor for keyset pagination of the beer list, wrapping the last beer id seen.
+ */
+public final class BeerCursor {
+
+    private static final String PREFIX = "id:";
+
+    private BeerCursor() {
+    }
+
+    public static String encode(Integer lastBeerId) {
+        return Base64.getUrlEncoder().withoutPadding()
+                .encodeToString((PREFIX + lastBeerId).getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * The last beer id seen, throwing InvalidCursorException for anything encode did not produce.
+     */
+    public static Integer decode(String cursor) {
+        try {
+            String decoded = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+
+            if (!decoded.startsWith(PREFIX)) {
+                throw new IllegalArgumentException("Unknown cursor format");
+            }
+            return Integer.valueOf(decoded.substring(PREFIX.length()));
+        } catch (IllegalArgumentException e) {
+            throw new InvalidCursorException(cursor);
+        }
+    }
+}
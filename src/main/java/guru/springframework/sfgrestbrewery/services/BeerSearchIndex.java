@@ -0,0 +1,283 @@
+package guru.springframework.sfgrestbrewery.services;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.LongSupplier;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+/**
+ * In memory inverted index over beer names and upcs.
+ *
+ * Names are split into lower case tokens. A beer matches a query when every query token matches one
+ * of its name tokens exactly, as a prefix or within a small edit distance, or, for digits, a prefix of
+ * its upc. Better matches score higher: exact over prefix over typo.
+ *
+ * Removed beers are remembered for a while, so a save indexed after the beer was deleted does not
+ * bring it back into search.
+ */
+@Component
+public class BeerSearchIndex {
+
+    private static final Pattern TOKEN_SEPARATOR = Pattern.compile("[^\\p{L}\\p{N}]+");
+
+    private static final int EXACT = 3;
+    private static final int PREFIX = 2;
+    private static final int FUZZY = 1;
+
+    private static final Duration TOMBSTONE_TIME = Duration.ofMinutes(5);
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    // sorted, so the terms or upcs starting with a prefix are one sub map
+    private final NavigableMap<String, Set<Integer>> terms = new TreeMap<>();
+    private final NavigableMap<String, Integer> upcs = new TreeMap<>();
+    private final Map<Integer, Entry> entries = new HashMap<>();
+
+    // nano time each beer was removed, oldest first, so the expired ones are at the head
+    private final LinkedHashMap<Integer, Long> tombstones = new LinkedHashMap<>();
+    private final long tombstoneNanos;
+    private final LongSupplier nanoTime;
+
+    public BeerSearchIndex() {
+        this(TOMBSTONE_TIME, System::nanoTime);
+    }
+
+    BeerSearchIndex(Duration tombstoneTime, LongSupplier nanoTime) {
+        this.tombstoneNanos = tombstoneTime.toNanos();
+        this.nanoTime = nanoTime;
+    }
+
+    /**
+     * Adds the beer, or replaces what was indexed for it before unless that was a later version. Writes
+     * that finish out of order then leave the index at the version the database ended up with. A beer
+     * removed lately is not added back.
+     */
+    public void index(Integer beerId, Long version, String beerName, String upc) {
+        Entry entry = new Entry(tokenize(beerName), upc, version);
+
+        lock.writeLock().lock();
+        try {
+            expireTombstones();
+            if (tombstones.containsKey(beerId)) {
+                return;
+            }
+
+            Entry indexed = entries.get(beerId);
+            if (indexed != null && indexed.version != null && version != null && indexed.version > version) {
+                return;
+            }
+            removeEntry(beerId);
+
+            entries.put(beerId, entry);
+            entry.tokens.forEach(token -> terms.computeIfAbsent(token, t -> new HashSet<>()).add(beerId));
+            if (upc != null) {
+                upcs.put(upc, beerId);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void remove(Integer beerId) {
+        lock.writeLock().lock();
+        try {
+            removeEntry(beerId);
+
+            expireTombstones();
+            tombstones.remove(beerId);
+            tombstones.put(beerId, nanoTime.getAsLong());
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return entries.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Ids of the best matching beers, best first, ties in id order.
+     */
+    public List<Integer> search(String query, int limit) {
+        List<String> queryTokens = tokenize(query);
+
+        if (queryTokens.isEmpty()) {
+            return Collections.emptyList();
+        }
+
+        lock.readLock().lock();
+        try {
+            Map<Integer, Integer> scores = null;
+
+            for (String token : queryTokens) {
+                Map<Integer, Integer> tokenScores = match(token);
+
+                if (scores == null) {
+                    scores = tokenScores;
+                } else {
+                    Map<Integer, Integer> previous = scores;
+                    scores = new HashMap<>();
+                    for (Map.Entry<Integer, Integer> match : tokenScores.entrySet()) {
+                        Integer score = previous.get(match.getKey());
+                        if (score != null) {
+                            scores.put(match.getKey(), score + match.getValue());
+                        }
+                    }
+                }
+
+                if (scores.isEmpty()) {
+                    return Collections.emptyList();
+                }
+            }
+
+            return scores.entrySet().stream()
+                    .sorted(Map.Entry.<Integer, Integer>comparingByValue().reversed()
+                            .thenComparing(Map.Entry.comparingByKey()))
+                    .limit(limit)
+                    .map(Map.Entry::getKey)
+                    .collect(Collectors.toList());
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private Map<Integer, Integer> match(String token) {
+        Map<Integer, Integer> matches = new HashMap<>();
+
+        for (Map.Entry<String, Set<Integer>> term : startingWith(terms, token).entrySet()) {
+            int score = term.getKey().length() == token.length() ? EXACT : PREFIX;
+            term.getValue().forEach(beerId -> matches.merge(beerId, score, Math::max));
+        }
+
+        // the vocabulary of beer names is small next to the number of beers, so a scan of it is cheap
+        int maxEdits = maxEdits(token);
+        if (maxEdits > 0) {
+            for (Map.Entry<String, Set<Integer>> term : terms.entrySet()) {
+                if (!term.getKey().startsWith(token) && withinEdits(token, term.getKey(), maxEdits)) {
+                    term.getValue().forEach(beerId -> matches.merge(beerId, FUZZY, Math::max));
+                }
+            }
+        }
+
+        if (isDigits(token)) {
+            startingWith(upcs, token).forEach((upc, beerId) ->
+                    matches.merge(beerId, upc.length() == token.length() ? EXACT : PREFIX, Math::max));
+        }
+        return matches;
+    }
+
+    private void removeEntry(Integer beerId) {
+        Entry entry = entries.remove(beerId);
+
+        if (entry == null) {
+            return;
+        }
+        entry.tokens.forEach(token -> {
+            Set<Integer> beerIds = terms.get(token);
+            beerIds.remove(beerId);
+            if (beerIds.isEmpty()) {
+                terms.remove(token);
+            }
+        });
+        if (entry.upc != null) {
+            upcs.remove(entry.upc, beerId);
+        }
+    }
+
+    private void expireTombstones() {
+        long now = nanoTime.getAsLong();
+
+        Iterator<Long> removedAt = tombstones.values().iterator();
+        while (removedAt.hasNext() && now - removedAt.next() >= tombstoneNanos) {
+            removedAt.remove();
+        }
+    }
+
+    private static <V> NavigableMap<String, V> startingWith(NavigableMap<String, V> map, String prefix) {
+        return map.subMap(prefix, true, prefix + Character.MAX_VALUE, false);
+    }
+
+    // one typo in a word of four or more letters, two from eight
+    private static int maxEdits(String token) {
+        return token.length() < 4 ? 0 : token.length() < 8 ? 1 : 2;
+    }
+
+    /**
+     * Levenshtein distance of at most maxEdits, giving up as soon as a row is all over it.
+     */
+    static boolean withinEdits(String a, String b, int maxEdits) {
+        if (Math.abs(a.length() - b.length()) > maxEdits) {
+            return false;
+        }
+
+        int[] previous = new int[b.length() + 1];
+        int[] current = new int[b.length() + 1];
+        for (int j = 0; j <= b.length(); j++) {
+            previous[j] = j;
+        }
+
+        for (int i = 1; i <= a.length(); i++) {
+            current[0] = i;
+            int rowMin = current[0];
+
+            for (int j = 1; j <= b.length(); j++) {
+                int substitution = previous[j - 1] + (a.charAt(i - 1) == b.charAt(j - 1) ? 0 : 1);
+                current[j] = Math.min(substitution, Math.min(previous[j], current[j - 1]) + 1);
+                rowMin = Math.min(rowMin, current[j]);
+            }
+
+            if (rowMin > maxEdits) {
+                return false;
+            }
+            int[] swap = previous;
+            previous = current;
+            current = swap;
+        }
+        return previous[b.length()] <= maxEdits;
+    }
+
+    private static boolean isDigits(String token) {
+        return token.chars().allMatch(Character::isDigit);
+    }
+
+    static List<String> tokenize(String text) {
+        if (text == null) {
+            return Collections.emptyList();
+        }
+        return Arrays.stream(TOKEN_SEPARATOR.split(text.toLowerCase(Locale.ROOT)))
+                .filter(token -> !token.isEmpty())
+                .distinct()
+                .collect(Collectors.toCollection(ArrayList::new));
+    }
+
+    @RequiredArgsConstructor
+    private static class Entry {
+
+        private final List<String> tokens;
+        private final String upc;
+        private final Long version;
+    }
+}
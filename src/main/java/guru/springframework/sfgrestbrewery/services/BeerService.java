@@ -1,11 +1,14 @@
 package guru.springframework.sfgrestbrewery.services;
 
 import guru.springframework.sfgrestbrewery.web.model.BeerDto;
+import guru.springframework.sfgrestbrewery.web.model.BeerLookupResult;
 import guru.springframework.sfgrestbrewery.web.model.BeerPagedList;
 import guru.springframework.sfgrestbrewery.web.model.BeerStyleEnum;
 import org.springframework.data.domain.PageRequest;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
+import java.util.List;
 import java.util.UUID;
 
 /**
@@ -14,12 +17,22 @@ import java.util.UUID;
 public interface BeerService {
     Mono<BeerPagedList> listBeers(String beerName, BeerStyleEnum beerStyle, PageRequest pageRequest, Boolean showInventoryOnHand);
 
+    Mono<BeerPagedList> listBeersAfter(String beerName, BeerStyleEnum beerStyle, String afterCursor, Integer pageSize, Boolean showInventoryOnHand);
+
+    Flux<BeerDto> streamBeers(String beerName, BeerStyleEnum beerStyle, Boolean showInventoryOnHand);
+
     Mono<BeerDto> getById(Integer beerId, Boolean showInventoryOnHand);
     Mono<BeerDto> saveBeer(BeerDto beerDto);
     Mono<BeerDto> saveBeerMono(Mono<BeerDto> beerDto);
+    Flux<BeerDto> saveBeers(List<BeerDto> beerDtos);
     Mono<BeerDto> updateBeer(Integer beerId, BeerDto beerDto);
     Mono<BeerDto> getByUpc(String upc);
 
-    void deleteBeerById(Integer beerId);
+    Flux<BeerLookupResult> getByIds(List<Integer> beerIds);
+
+    Flux<BeerLookupResult> getByUpcs(List<String> upcs);
+
+    Flux<BeerDto> searchBeers(String query, Integer limit);
+
     Mono<Void> deleteBeerByIdReactive(Integer beerId);
 }
@@ -5,24 +5,44 @@ import guru.springframework.sfgrestbrewery.repositories.BeerRepository;
 import guru.springframework.sfgrestbrewery.web.controller.NotFoundException;
 import guru.springframework.sfgrestbrewery.web.mappers.BeerMapper;
 import guru.springframework.sfgrestbrewery.web.model.BeerDto;
+import guru.springframework.sfgrestbrewery.web.model.BeerLookupResult;
 import guru.springframework.sfgrestbrewery.web.model.BeerPagedList;
 import guru.springframework.sfgrestbrewery.web.model.BeerStyleEnum;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.cache.annotation.Cacheable;
-import org.springframework.data.domain.Page;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.dao.OptimisticLockingFailureException;
 import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
 import org.springframework.data.r2dbc.core.R2dbcEntityTemplate;
-import org.springframework.data.relational.core.query.Query;
+import org.springframework.data.relational.core.query.Criteria;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.reactive.TransactionalOperator;
 import org.springframework.util.StringUtils;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
+import reactor.util.retry.Retry;
 
-import java.util.UUID;
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
+import static guru.springframework.sfgrestbrewery.config.CacheConfig.BEER_CACHE;
+import static guru.springframework.sfgrestbrewery.config.CacheConfig.BEER_COUNT_CACHE;
+import static guru.springframework.sfgrestbrewery.config.CacheConfig.BEER_LIST_CACHE;
+import static guru.springframework.sfgrestbrewery.config.CacheConfig.BEER_UPC_CACHE;
 import static org.springframework.data.relational.core.query.Criteria.where;
-import static org.springframework.data.relational.core.query.Query.empty;
 import static org.springframework.data.relational.core.query.Query.query;
 
 /**
@@ -32,48 +52,141 @@ import static org.springframework.data.relational.core.query.Query.query;
 @Service
 @RequiredArgsConstructor
 public class BeerServiceImpl implements BeerService {
+
+    private static final int UNVERSIONED_UPDATE_ATTEMPTS = 3;
+
     private final BeerRepository beerRepository;
     private final BeerMapper beerMapper;
     private final R2dbcEntityTemplate template;
+    private final TransactionalOperator transactionalOperator;
+    private final CacheManager cacheManager;
+    private final BeerSearchIndex searchIndex;
+    private final InventoryService inventoryService;
+    private final BeerChangeStream changeStream;
+
+    // concurrent misses for the same beer share one query
+    private final SingleFlight<Integer, Beer> beerLoads = new SingleFlight<>();
+    private final SingleFlight<String, Beer> upcLoads = new SingleFlight<>();
+
+    // bumped as beers and lists are evicted, so a load that read them before a write does not cache them after
+    private final ConcurrentMap<Integer, AtomicLong> beerGenerations = new ConcurrentHashMap<>();
+    private final AtomicLong beerEvictions = new AtomicLong();
+    private final AtomicLong listEvictions = new AtomicLong();
 
-    @Cacheable(cacheNames = "beerListCache", condition = "#showInventoryOnHand == false ")
     @Override
     public Mono<BeerPagedList> listBeers(String beerName, BeerStyleEnum beerStyle, PageRequest pageRequest, Boolean showInventoryOnHand) {
 
-        Query query = null;
+        if (showInventoryOnHand) {
+            return findBeers(beerName, beerStyle, pageRequest);
+        }
+
+        String cacheKey = beerName + ":" + beerStyle + ":" + pageRequest.getPageNumber() + ":" + pageRequest.getPageSize();
+        return cached(BEER_LIST_CACHE, cacheKey, BeerPagedList.class, listEvictions::get, () -> findBeers(beerName, beerStyle, pageRequest));
+    }
+
+    @Override
+    public Mono<BeerPagedList> listBeersAfter(String beerName, BeerStyleEnum beerStyle, String afterCursor, Integer pageSize, Boolean showInventoryOnHand) {
+
+        if (showInventoryOnHand) {
+            return findBeersAfter(beerName, beerStyle, afterCursor, pageSize);
+        }
+
+        String cacheKey = beerName + ":" + beerStyle + ":after:" + afterCursor + ":" + pageSize;
+        return cached(BEER_LIST_CACHE, cacheKey, BeerPagedList.class, listEvictions::get, () -> findBeersAfter(beerName, beerStyle, afterCursor, pageSize));
+    }
+
+    private Mono<BeerPagedList> findBeers(String beerName, BeerStyleEnum beerStyle, PageRequest pageRequest) {
+
+        Mono<List<BeerDto>> beers = template.select(Beer.class)
+                .matching(query(criteria(beerName, beerStyle)).with(pageRequest))
+                .all()
+                .map(beerMapper::beerToBeerDto)
+                .collect(Collectors.toList());
+
+        return Mono.zip(beers, countBeers(beerName, beerStyle))
+                .map(pageAndCount -> new BeerPagedList(pageAndCount.getT1(), PageRequest.of(
+                        pageRequest.getPageNumber(),
+                        pageRequest.getPageSize()),
+                        pageAndCount.getT2()));
+    }
+
+    private Mono<BeerPagedList> findBeersAfter(String beerName, BeerStyleEnum beerStyle, String afterCursor, Integer pageSize) {
+
+        Mono<List<BeerDto>> beers = Mono.fromCallable(() -> StringUtils.hasLength(afterCursor) ? BeerCursor.decode(afterCursor) : 0)
+                .flatMap(lastBeerId -> {
+                    // seek past the last id seen rather than skipping rows, so deep pages cost the same as the first
+                    Criteria criteria = criteria(beerName, beerStyle);
+                    criteria = criteria.isEmpty() ? where("id").greaterThan(lastBeerId) : criteria.and("id").greaterThan(lastBeerId);
+
+                    return template.select(Beer.class)
+                            .matching(query(criteria).sort(Sort.by("id")).limit(pageSize + 1))
+                            .all()
+                            .map(beerMapper::beerToBeerDto)
+                            .collect(Collectors.toList());
+                });
+
+        return Mono.zip(beers, countBeers(beerName, beerStyle))
+                .map(pageAndCount -> {
+                    // one row past the page says whether there is another, so the last page has no cursor
+                    List<BeerDto> page = pageAndCount.getT1();
+                    String nextCursor = null;
+                    if (page.size() > pageSize) {
+                        page = page.subList(0, pageSize);
+                        nextCursor = BeerCursor.encode(page.get(pageSize - 1).getId());
+                    }
+
+                    return new BeerPagedList(page, pageSize, pageAndCount.getT2(), !StringUtils.hasLength(afterCursor), nextCursor);
+                });
+    }
+
+    @Override
+    public Flux<BeerDto> streamBeers(String beerName, BeerStyleEnum beerStyle, Boolean showInventoryOnHand) {
+
+        // rows are pulled from the driver as the subscriber demands them, nothing is collected here
+        return template.select(Beer.class)
+                .matching(query(criteria(beerName, beerStyle)).sort(Sort.by("id")))
+                .all()
+                .map(showInventoryOnHand ? beerMapper::beerToBeerDtoWithInventory : beerMapper::beerToBeerDto);
+    }
+
+    private Mono<Long> countBeers(String beerName, BeerStyleEnum beerStyle) {
+        return cached(BEER_COUNT_CACHE, beerName + ":" + beerStyle, Long.class, listEvictions::get,
+                () -> template.count(query(criteria(beerName, beerStyle)), Beer.class));
+    }
+
+    private Criteria criteria(String beerName, BeerStyleEnum beerStyle) {
 
         if (!StringUtils.isEmpty(beerName) && !StringUtils.isEmpty(beerStyle)) {
             //search both
-            query = query(where("beerName").is(beerName).and("beerStyle").is(beerStyle));
+            return where("beerName").is(beerName).and("beerStyle").is(beerStyle);
         } else if (!StringUtils.isEmpty(beerName) && StringUtils.isEmpty(beerStyle)) {
             //search beer_service name
-            query = query(where("beerName").is(beerName));
+            return where("beerName").is(beerName);
         } else if (StringUtils.isEmpty(beerName) && !StringUtils.isEmpty(beerStyle)) {
             //search beer_service style
-            query = query(where("beerStyle").is(beerStyle));
+            return where("beerStyle").is(beerStyle);
         } else {
-            query = empty();
+            return Criteria.empty();
         }
-        return template.select(Beer.class)
-                .matching(query.with(pageRequest))
-                .all()
-                .map(beerMapper::beerToBeerDto)
-                .collect(Collectors.toList())
-                .map(beers -> new BeerPagedList(beers, PageRequest.of(
-                        pageRequest.getPageNumber(),
-                        pageRequest.getPageSize()),
-                        beers.size()));
     }
 
-    @Cacheable(cacheNames = "beerCache", key = "#beerId", condition = "#showInventoryOnHand == false ")
     @Override
     public Mono<BeerDto> getById(Integer beerId, Boolean showInventoryOnHand) {
 
         if (showInventoryOnHand) {
-            return beerRepository.findById(beerId).map(beerMapper::beerToBeerDtoWithInventory);
+            // the stored quantity lags behind reservations still in the write behind buffer
+            return findById(beerId)
+                    .map(beerMapper::beerToBeerDtoWithInventory)
+                    .flatMap(beerDto -> inventoryService.quantityOnHand(beerId)
+                            .map(quantityOnHand -> {
+                                beerDto.setQuantityOnHand(quantityOnHand);
+                                return beerDto;
+                            })
+                            .defaultIfEmpty(beerDto));
 
         } else {
-            return beerRepository.findById(beerId).map(beerMapper::beerToBeerDto);
+            return cached(BEER_CACHE, beerId, BeerDto.class, () -> beerGeneration(beerId),
+                    () -> findById(beerId).map(beerMapper::beerToBeerDto));
         }
 
     }
@@ -82,46 +195,196 @@ public class BeerServiceImpl implements BeerService {
     public Mono<BeerDto> saveBeerMono(Mono<BeerDto> beerDto) {
         return beerDto.map(beerMapper::beerDtoToBeer)
                 .flatMap(beerRepository::save)
-                .map(beerMapper::beerToBeerDto);
+                .map(beerMapper::beerToBeerDto)
+                .doOnNext(this::saved);
     }
 
     @Override
     public Mono<BeerDto> saveBeer(BeerDto beerDto) {
-        return beerRepository.save(beerMapper.beerDtoToBeer(beerDto)).map(beerMapper::beerToBeerDto);
-    }
-
-        @Override
-        public Mono<BeerDto> updateBeer (Integer beerId, BeerDto beerDto){
-
-            return beerRepository.findById(beerId)
-                    .defaultIfEmpty(Beer.builder().build()) // return an empty Beer
-                    .map(foundBeer -> {
-                        foundBeer.setBeerName(beerDto.getBeerName());
-                        foundBeer.setBeerStyle(BeerStyleEnum.valueOf(beerDto.getBeerStyle()));
-                        foundBeer.setUpc(beerDto.getUpc());
-                        foundBeer.setPrice(beerDto.getPrice());
-                        return foundBeer;
-                    }).flatMap(updatedBeer -> {
-                        if (updatedBeer.getId() != null) {
-                            return beerRepository.save(updatedBeer);
-                        }
-                        return Mono.just(updatedBeer);  // will be a beer set to nulls
-                    })
-                    .map(beerMapper::beerToBeerDto);
+        return beerRepository.save(beerMapper.beerDtoToBeer(beerDto))
+                .map(beerMapper::beerToBeerDto)
+                .doOnNext(this::saved);
+    }
 
-        }
+    @Override
+    public Flux<BeerDto> saveBeers(List<BeerDto> beerDtos) {
+        // held back until the transaction commits, so a batch that rolls back is never indexed
+        return Flux.defer(() -> beerRepository.insertAll(beerDtos.stream()
+                        .map(beerMapper::beerDtoToBeer)
+                        .collect(Collectors.toList())))
+                .map(beerMapper::beerToBeerDto)
+                .as(transactionalOperator::transactional)
+                .collectList()
+                .doOnNext(savedDtos -> {
+                    savedDtos.forEach(this::index);
+                    evictBeerLists();
+                })
+                .flatMapIterable(savedDtos -> savedDtos);
+    }
 
-        @Cacheable(cacheNames = "beerUpcCache")
-        @Override
-        public Mono<BeerDto> getByUpc (String upc){
+    @Override
+    public Mono<BeerDto> updateBeer(Integer beerId, BeerDto beerDto) {
 
-            return beerRepository.findByUpc(upc).map(beerMapper::beerToBeerDto);
+        if (beerDto.getVersion() != null) {
+            return Mono.defer(() -> updateBeer(beerId, beerDto.getVersion(), priceAt(beerId, beerDto.getVersion()), beerDto));
         }
 
-        @Override
-        public void deleteBeerById (Integer beerId){
-            beerRepository.deleteById(beerId).subscribe();
-        }
+        // an unversioned update is applied at the version read just before it, so the version returned is
+        // the one written, and it is read again should another update get in between
+        return Mono.defer(() -> beerRepository.findById(beerId))
+                .switchIfEmpty(Mono.error(NotFoundException::new))
+                .flatMap(beer -> updateBeer(beerId, beer.getVersion(), beer.getPrice(), beerDto))
+                .retryWhen(Retry.max(UNVERSIONED_UPDATE_ATTEMPTS - 1)
+                        .filter(OptimisticLockingFailureException.class::isInstance)
+                        .onRetryExhaustedThrow((retrySpec, retrySignal) -> retrySignal.failure()));
+    }
+
+    /**
+     * The beer's price at the version an update replaces when the cache holds that version, otherwise
+     * null. Not read from the database, which would cost the versioned update a second statement.
+     */
+    private BigDecimal priceAt(Integer beerId, Long version) {
+        BeerDto cachedDto = cache(BEER_CACHE).get(beerId, BeerDto.class);
+        return cachedDto != null && version.equals(cachedDto.getVersion()) ? cachedDto.getPrice() : null;
+    }
+
+    private Mono<BeerDto> updateBeer(Integer beerId, Long version, BigDecimal previousPrice, BeerDto beerDto) {
+
+        LocalDateTime lastModifiedDate = LocalDateTime.now();
+
+        return beerRepository.updateBeer(beerId, version, beerDto.getBeerName(),
+                BeerStyleEnum.valueOf(beerDto.getBeerStyle()).name(), beerDto.getUpc(), beerDto.getPrice(), lastModifiedDate)
+                .flatMap(updated -> {
+                    if (updated == 0) {
+                        // only the failure path pays for a second query, to tell a missing beer from a stale version
+                        return beerRepository.existsById(beerId)
+                                .flatMap(exists -> Mono.error(exists
+                                        ? new OptimisticLockingFailureException("Beer " + beerId + " is no longer at version " + version)
+                                        : new NotFoundException()));
+                    }
+
+                    BeerDto updatedDto = BeerDto.builder()
+                            .id(beerId)
+                            .version(version == null ? null : version + 1)
+                            .beerName(beerDto.getBeerName())
+                            .beerStyle(beerDto.getBeerStyle())
+                            .upc(beerDto.getUpc())
+                            .price(beerDto.getPrice())
+                            .lastUpdatedDate(lastModifiedDate)
+                            .build();
+
+                    evictBeer(beerId);
+                    index(updatedDto);
+                    if (priceChanged(previousPrice, beerDto.getPrice())) {
+                        changeStream.priceChanged(beerId, beerDto.getPrice());
+                    }
+                    return Mono.just(updatedDto);
+                });
+    }
+
+    @Override
+    public Mono<BeerDto> getByUpc(String upc) {
+
+        Cache upcCache = cache(BEER_UPC_CACHE);
+        Cache beerCache = cache(BEER_CACHE);
+
+        // the upc cache only maps to a beer id, so updates and deletes need to evict by id alone.
+        // a mapping goes stale when a beer's upc changes, hence the check against the cached beer
+        return Mono.defer(() -> {
+                    Integer beerId = upcCache.get(upc, Integer.class);
+                    BeerDto beerDto = beerId == null ? null : beerCache.get(beerId, BeerDto.class);
+                    return Mono.justOrEmpty(beerDto).filter(cachedDto -> upc.equals(cachedDto.getUpc()));
+                })
+                .switchIfEmpty(Mono.defer(() -> {
+                    long evictions = beerEvictions.get();
+
+                    return upcLoads.load(upc, () -> beerRepository.findByUpc(upc))
+                            .map(beerMapper::beerToBeerDto)
+                            .doOnNext(beerDto -> putBeer(beerDto, upc, evictions));
+                }));
+    }
+
+    @Override
+    public Flux<BeerLookupResult> getByIds(List<Integer> beerIds) {
+
+        Cache beerCache = cache(BEER_CACHE);
+
+        return Flux.defer(() -> {
+            Map<Integer, BeerDto> found = new HashMap<>();
+            Set<Integer> missing = new HashSet<>();
+
+            beerIds.forEach(beerId -> {
+                BeerDto cachedDto = beerCache.get(beerId, BeerDto.class);
+
+                if (cachedDto != null) {
+                    found.put(beerId, cachedDto);
+                } else {
+                    missing.add(beerId);
+                }
+            });
+
+            // everything not cached comes back from a single id IN (...) query
+            long evictions = beerEvictions.get();
+            Flux<BeerDto> loaded = missing.isEmpty() ? Flux.empty() : beerRepository.findAllById(missing)
+                    .map(beerMapper::beerToBeerDto)
+                    .doOnNext(beerDto -> putBeer(beerDto, null, evictions));
+
+            return loaded
+                    .doOnNext(beerDto -> found.put(beerDto.getId(), beerDto))
+                    .thenMany(Flux.fromIterable(beerIds)
+                            .map(beerId -> BeerLookupResult.builder()
+                                    .id(beerId)
+                                    .found(found.containsKey(beerId))
+                                    .beer(found.get(beerId))
+                                    .build()));
+        });
+    }
+
+    @Override
+    public Flux<BeerLookupResult> getByUpcs(List<String> upcs) {
+
+        Cache upcCache = cache(BEER_UPC_CACHE);
+        Cache beerCache = cache(BEER_CACHE);
+
+        return Flux.defer(() -> {
+            Map<String, BeerDto> found = new HashMap<>();
+            Set<String> missing = new HashSet<>();
+
+            // same stale mapping check as getByUpc
+            upcs.forEach(upc -> {
+                Integer beerId = upcCache.get(upc, Integer.class);
+                BeerDto cachedDto = beerId == null ? null : beerCache.get(beerId, BeerDto.class);
+
+                if (cachedDto != null && upc.equals(cachedDto.getUpc())) {
+                    found.put(upc, cachedDto);
+                } else {
+                    missing.add(upc);
+                }
+            });
+
+            long evictions = beerEvictions.get();
+            Flux<BeerDto> loaded = missing.isEmpty() ? Flux.empty() : beerRepository.findAllByUpcIn(missing)
+                    .map(beerMapper::beerToBeerDto)
+                    .doOnNext(beerDto -> putBeer(beerDto, beerDto.getUpc(), evictions));
+
+            return loaded
+                    .doOnNext(beerDto -> found.put(beerDto.getUpc(), beerDto))
+                    .thenMany(Flux.fromIterable(upcs)
+                            .map(upc -> BeerLookupResult.builder()
+                                    .upc(upc)
+                                    .found(found.containsKey(upc))
+                                    .beer(found.get(upc))
+                                    .build()));
+        });
+    }
+
+    @Override
+    public Flux<BeerDto> searchBeers(String query, Integer limit) {
+        // the index ranks the ids, the beers themselves come through the cache and one IN query
+        return Flux.defer(() -> getByIds(searchIndex.search(query, limit)))
+                .filter(BeerLookupResult::isFound)
+                .map(BeerLookupResult::getBeer);
+    }
 
     @Override
     public Mono<Void> deleteBeerByIdReactive(Integer beerId) {
@@ -131,7 +394,92 @@ public class BeerServiceImpl implements BeerService {
                     return beer.getId();
                 })
                 .flatMap(foundBeerId ->{
-                    return beerRepository.deleteById(foundBeerId);
+                    return beerRepository.deleteById(foundBeerId)
+                            .doOnSuccess(deleted -> {
+                                evictBeer(foundBeerId);
+                                searchIndex.remove(foundBeerId);
+                                inventoryService.forget(foundBeerId);
+                                changeStream.beerDeleted(foundBeerId);
+                            });
                 });
     }
+
+    // a change notification has no way to say a price was cleared, so only a new price is published.
+    // without the previous price, any price the update carries is published
+    private static boolean priceChanged(BigDecimal previousPrice, BigDecimal price) {
+        return price != null && (previousPrice == null || previousPrice.compareTo(price) != 0);
+    }
+
+    private void saved(BeerDto savedDto) {
+        evictBeerLists();
+        index(savedDto);
+    }
+
+    private void index(BeerDto savedDto) {
+        searchIndex.index(savedDto.getId(), savedDto.getVersion(), savedDto.getBeerName(), savedDto.getUpc());
+    }
+
+    private <T> Mono<T> cached(String cacheName, Object key, Class<T> type, LongSupplier generation, Supplier<Mono<T>> loader) {
+        Cache cache = cache(cacheName);
+
+        return Mono.defer(() -> Mono.justOrEmpty(cache.get(key, type)))
+                .switchIfEmpty(Mono.defer(() -> {
+                    long loadGeneration = generation.getAsLong();
+                    return loader.get().doOnNext(value -> putUnlessEvicted(cache, key, value, loadGeneration, generation));
+                }));
+    }
+
+    /**
+     * Caches a beer loaded by upc or in a batch, whose id was not known as the load started, so it is
+     * put only if no beer at all was evicted since.
+     */
+    private void putBeer(BeerDto beerDto, String upc, long evictions) {
+        putUnlessEvicted(cache(BEER_CACHE), beerDto.getId(), beerDto, evictions, beerEvictions::get);
+        if (upc != null) {
+            putUnlessEvicted(cache(BEER_UPC_CACHE), upc, beerDto.getId(), evictions, beerEvictions::get);
+        }
+    }
+
+    // an eviction bumps the generation before it evicts, so one landing after the check is either
+    // followed by its own evict, or seen by the check after the put
+    private static void putUnlessEvicted(Cache cache, Object key, Object value, long loadGeneration, LongSupplier generation) {
+        if (generation.getAsLong() != loadGeneration) {
+            return;
+        }
+
+        cache.put(key, value);
+
+        if (generation.getAsLong() != loadGeneration) {
+            cache.evict(key);
+        }
+    }
+
+    private long beerGeneration(Integer beerId) {
+        AtomicLong generation = beerGenerations.get(beerId);
+        return generation == null ? 0 : generation.get();
+    }
+
+    private Mono<Beer> findById(Integer beerId) {
+        return beerLoads.load(beerId, () -> beerRepository.findById(beerId));
+    }
+
+    // new loads stop joining the old one first, so none can start at the new generation and still
+    // get what the old one read
+    private void evictBeer(Integer beerId) {
+        beerLoads.forget(beerId);
+        beerGenerations.computeIfAbsent(beerId, id -> new AtomicLong()).incrementAndGet();
+        beerEvictions.incrementAndGet();
+        cache(BEER_CACHE).evict(beerId);
+        evictBeerLists();
+    }
+
+    private void evictBeerLists() {
+        listEvictions.incrementAndGet();
+        cache(BEER_LIST_CACHE).clear();
+        cache(BEER_COUNT_CACHE).clear();
+    }
+
+    private Cache cache(String cacheName) {
+        return cacheManager.getCache(cacheName);
+    }
 }
@@ -1,6 +1,7 @@
 package guru.springframework.sfgrestbrewery.services;
 
 import guru.springframework.sfgrestbrewery.web.model.CustomerDto;
+import reactor.core.publisher.Mono;
 
 import java.util.UUID;
 
@@ -8,11 +9,17 @@ import java.util.UUID;
  * Created by jt on 2019-04-21.
  */
 public interface CustomerService {
-    CustomerDto getCustomerById(UUID customerId);
+    Mono<CustomerDto> getCustomerById(UUID customerId);
 
-    CustomerDto saveNewCustomer(CustomerDto customerDto);
+    Mono<CustomerDto> saveNewCustomer(CustomerDto customerDto);
 
-    void updateCustomer(UUID customerId, CustomerDto customerDto);
+    /**
+     * Errors with NotFoundException for an unknown customer.
+     */
+    Mono<Void> updateCustomer(UUID customerId, CustomerDto customerDto);
 
-    void deleteById(UUID customerId);
+    /**
+     * Errors with NotFoundException for an unknown customer.
+     */
+    Mono<Void> deleteById(UUID customerId);
 }
@@ -1,8 +1,14 @@
 package guru.springframework.sfgrestbrewery.services;
 
+import guru.springframework.sfgrestbrewery.domain.Customer;
+import guru.springframework.sfgrestbrewery.repositories.CustomerRepository;
+import guru.springframework.sfgrestbrewery.web.controller.NotFoundException;
+import guru.springframework.sfgrestbrewery.web.mappers.CustomerMapper;
 import guru.springframework.sfgrestbrewery.web.model.CustomerDto;
+import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
+import reactor.core.publisher.Mono;
 
 import java.util.UUID;
 
@@ -11,30 +17,37 @@ import java.util.UUID;
  */
 @Slf4j
 @Service
+@RequiredArgsConstructor
 public class CustomerServiceImpl implements CustomerService {
+
+    private final CustomerRepository customerRepository;
+    private final CustomerMapper customerMapper;
+
     @Override
-    public CustomerDto getCustomerById(UUID customerId) {
-        return CustomerDto.builder()
-                .id(UUID.randomUUID())
-                .name("Joe Buck")
-                .build();
+    public Mono<CustomerDto> getCustomerById(UUID customerId) {
+        return customerRepository.findById(customerId)
+                .map(customerMapper::customerToCustomerDto);
     }
 
     @Override
-    public CustomerDto saveNewCustomer(CustomerDto customerDto) {
-        return CustomerDto.builder()
-                .id(UUID.randomUUID())
-                .build();
+    public Mono<CustomerDto> saveNewCustomer(CustomerDto customerDto) {
+        return Mono.defer(() -> {
+            Customer customer = customerMapper.customerDtoToCustomer(customerDto);
+            customer.setId(UUID.randomUUID());
+
+            return customerRepository.save(customer);
+        }).map(customerMapper::customerToCustomerDto);
     }
 
     @Override
-    public void updateCustomer(UUID customerId, CustomerDto customerDto) {
-        //todo impl
-        log.debug("Updating....");
+    public Mono<Void> updateCustomer(UUID customerId, CustomerDto customerDto) {
+        return customerRepository.updateName(customerId, customerDto.getName())
+                .flatMap(updated -> updated == 0 ? Mono.error(new NotFoundException()) : Mono.empty());
     }
 
     @Override
-    public void deleteById(UUID customerId) {
-        log.debug("Deleting.... ");
+    public Mono<Void> deleteById(UUID customerId) {
+        return customerRepository.deleteCustomer(customerId)
+                .flatMap(deleted -> deleted == 0 ? Mono.error(new NotFoundException()) : Mono.empty());
     }
 }
@@ -0,0 +1,11 @@
+package guru.springframework.sfgrestbrewery.services;
+
+/**
+ * A page cursor that was not issued by BeerCursor, or has been tampered with.
+ */
+public class InvalidCursorException extends IllegalArgumentException {
+
+    public InvalidCursorException(String cursor) {
+        super("Invalid page cursor: " + cursor);
+    }
+}
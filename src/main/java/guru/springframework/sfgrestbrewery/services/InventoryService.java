@@ -0,0 +1,29 @@
+package guru.springframework.sfgrestbrewery.services;
+
+import guru.springframework.sfgrestbrewery.web.model.BeerInventory;
+import reactor.core.publisher.Mono;
+
+public interface InventoryService {
+
+    /**
+     * Takes quantity units off the beer's stock, all or nothing. Errors with NotFoundException for an
+     * unknown beer, InsufficientInventoryException when there are not enough units on hand.
+     */
+    Mono<BeerInventory> reserve(Integer beerId, int quantity);
+
+    /**
+     * Puts quantity units back on the beer's stock. Errors with NotFoundException for an unknown beer.
+     */
+    Mono<BeerInventory> release(Integer beerId, int quantity);
+
+    /**
+     * The beer's stock including movements not yet written to the database, empty when none have
+     * been made on it since startup, in which case the stored quantity is current.
+     */
+    Mono<Integer> quantityOnHand(Integer beerId);
+
+    /**
+     * Drops what is held for a beer that has been deleted.
+     */
+    void forget(Integer beerId);
+}
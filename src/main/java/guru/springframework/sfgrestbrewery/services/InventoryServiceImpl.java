@@ -0,0 +1,138 @@
+package guru.springframework.sfgrestbrewery.services;
+
+import guru.springframework.sfgrestbrewery.repositories.BeerRepository;
+import guru.springframework.sfgrestbrewery.web.controller.InsufficientInventoryException;
+import guru.springframework.sfgrestbrewery.web.controller.NotFoundException;
+import guru.springframework.sfgrestbrewery.web.model.BeerInventory;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Mono;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Reservations claim units from an in memory counter per beer, by compare and set. Reservations of a hot
+ * beer then contend on one atomic rather than one row lock, and those that cannot succeed are turned
+ * down at once.
+ *
+ * The counter is the beer's stock. The database catches up through the InventoryWriteBehind buffer,
+ * which coalesces each beer's movements into one row update per window. Stock is meant to move only
+ * through here, so counters loaded once stay right for as long as the beer exists.
+ *
+ * Each movement is published to the BeerChangeStream once the buffer has taken it.
+ *
+ * Stock moved around these counters, by another instance or by hand, can leave a counter above what the
+ * database has. The database then turns the movement down and the counter is reset to the database's
+ * stock plus the movements taken since, which are still pending and which it will accept.
+ */
+@Slf4j
+@Service
+public class InventoryServiceImpl implements InventoryService {
+
+    private final BeerRepository beerRepository;
+    private final InventoryWriteBehind writeBehind;
+    private final BeerChangeStream changeStream;
+
+    private final ConcurrentMap<Integer, AtomicInteger> onHand = new ConcurrentHashMap<>();
+    private final SingleFlight<Integer, AtomicInteger> counterLoads = new SingleFlight<>();
+
+    public InventoryServiceImpl(BeerRepository beerRepository, InventoryWriteBehind writeBehind, BeerChangeStream changeStream) {
+        this.beerRepository = beerRepository;
+        this.writeBehind = writeBehind;
+        this.changeStream = changeStream;
+
+        writeBehind.onRejected(this::reconcile);
+    }
+
+    @Override
+    public Mono<BeerInventory> reserve(Integer beerId, int quantity) {
+        return counter(beerId).flatMap(counter -> {
+            int remaining = claim(counter, quantity);
+
+            if (remaining < 0) {
+                return Mono.error(new InsufficientInventoryException(beerId, quantity));
+            }
+
+            return writeBehind.add(beerId, -quantity)
+                    .doOnError(e -> counter.addAndGet(quantity))
+                    .doOnSuccess(added -> changeStream.inventoryChanged(beerId, counter::get))
+                    .thenReturn(inventory(beerId, remaining));
+        });
+    }
+
+    @Override
+    public Mono<BeerInventory> release(Integer beerId, int quantity) {
+        return counter(beerId).flatMap(counter -> {
+            int remaining = counter.addAndGet(quantity);
+
+            return writeBehind.add(beerId, quantity)
+                    .doOnError(e -> counter.addAndGet(-quantity))
+                    .doOnSuccess(added -> changeStream.inventoryChanged(beerId, counter::get))
+                    .thenReturn(inventory(beerId, remaining));
+        });
+    }
+
+    @Override
+    public Mono<Integer> quantityOnHand(Integer beerId) {
+        return Mono.fromSupplier(() -> {
+            AtomicInteger counter = onHand.get(beerId);
+            return counter == null ? null : counter.get();
+        });
+    }
+
+    @Override
+    public void forget(Integer beerId) {
+        onHand.remove(beerId);
+        counterLoads.forget(beerId);
+        writeBehind.discard(beerId);
+    }
+
+    /**
+     * The database turned down a movement, so the beer's counter held stock the database does not have.
+     * Only that movement is lost, the counter is set to what the database has plus what is still pending.
+     */
+    private void reconcile(Integer beerId, Integer quantityOnHand) {
+        AtomicInteger counter = onHand.get(beerId);
+
+        if (counter == null) {
+            changeStream.inventoryChanged(beerId, () -> quantityOnHand);
+            return;
+        }
+
+        counter.set(quantityOnHand + writeBehind.pending(beerId));
+        changeStream.inventoryChanged(beerId, counter::get);
+    }
+
+    /**
+     * Takes quantity off the counter, returning what is left, or -1 leaving it unchanged when it is too low.
+     */
+    private static int claim(AtomicInteger counter, int quantity) {
+        while (true) {
+            int available = counter.get();
+
+            if (available < quantity) {
+                return -1;
+            }
+            if (counter.compareAndSet(available, available - quantity)) {
+                return available - quantity;
+            }
+        }
+    }
+
+    private Mono<AtomicInteger> counter(Integer beerId) {
+        return Mono.defer(() -> Mono.justOrEmpty(onHand.get(beerId)))
+                .switchIfEmpty(counterLoads.load(beerId, () -> beerRepository.findById(beerId)
+                        .map(beer -> onHand.computeIfAbsent(beerId, id ->
+                                new AtomicInteger(beer.getQuantityOnHand() == null ? 0 : beer.getQuantityOnHand())))))
+                .switchIfEmpty(Mono.error(NotFoundException::new));
+    }
+
+    private static BeerInventory inventory(Integer beerId, int quantityOnHand) {
+        return BeerInventory.builder()
+                .beerId(beerId)
+                .quantityOnHand(quantityOnHand)
+                .build();
+    }
+}
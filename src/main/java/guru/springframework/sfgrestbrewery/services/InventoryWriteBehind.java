@@ -0,0 +1,239 @@
+package guru.springframework.sfgrestbrewery.services;
+
+import guru.springframework.sfgrestbrewery.repositories.BeerRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.BiConsumer;
+
+/**
+ * Write behind buffer for stock movements. Deltas are summed per beer in memory and written every
+ * sfg.brewery.inventory.write-behind.window as one batched UPDATE, so a burst of reservations on a hot
+ * beer costs one row update per window rather than one each, and deltas that cancel out cost none.
+ *
+ * The buffer holds deltas for at most max-pending beers, a delta for one more beer waits for the next
+ * flush. What is pending is written when the context closes, by which time the web server has stopped
+ * taking requests. Deltas not yet written are lost if the process dies without closing the context.
+ *
+ * The UPDATE will not take stock below zero. A delta it turns down means the counters in front of the
+ * buffer held stock the database does not have, as when another instance moved it, see onRejected.
+ *
+ * inventory.writebehind.deltas counts deltas taken and inventory.writebehind.rows the row updates they
+ * were coalesced into, inventory.writebehind.coalescing.ratio is the one over the other.
+ * inventory.writebehind.rejected counts row updates turned down.
+ */
+@Slf4j
+@Component
+public class InventoryWriteBehind implements InitializingBean, DisposableBean {
+
+    private static final String FLUSH = "flush";
+
+    private static final Duration SHUTDOWN_TIMEOUT = Duration.ofSeconds(30);
+
+    private final BeerRepository beerRepository;
+    private final Duration window;
+    private final int maxPending;
+
+    private final ConcurrentMap<Integer, Integer> pending = new ConcurrentHashMap<>();
+
+    // one flush at a time, callers needing one while it runs wait on it rather than starting another
+    private final SingleFlight<String, Integer> flushes = new SingleFlight<>();
+
+    private final Counter deltas;
+    private final Counter rows;
+    private final Counter rejected;
+    private final Timer flushTimer;
+
+    private volatile Disposable scheduledFlushes;
+
+    private volatile BiConsumer<Integer, Integer> rejectionListener = (beerId, quantityOnHand) -> { };
+
+    public InventoryWriteBehind(BeerRepository beerRepository, MeterRegistry meterRegistry,
+                                @Value("${sfg.brewery.inventory.write-behind.window:100ms}") Duration window,
+                                @Value("${sfg.brewery.inventory.write-behind.max-pending:10000}") int maxPending) {
+        this.beerRepository = beerRepository;
+        this.window = window;
+        this.maxPending = maxPending;
+
+        this.deltas = Counter.builder("inventory.writebehind.deltas")
+                .description("Stock movements taken into the write behind buffer")
+                .register(meterRegistry);
+        this.rows = Counter.builder("inventory.writebehind.rows")
+                .description("Row updates the buffered stock movements were written as")
+                .register(meterRegistry);
+        this.rejected = Counter.builder("inventory.writebehind.rejected")
+                .description("Row updates turned down as they would take stock below zero")
+                .register(meterRegistry);
+        this.flushTimer = Timer.builder("inventory.writebehind.flush")
+                .description("Time taken to write the buffered stock movements")
+                .register(meterRegistry);
+
+        Gauge.builder("inventory.writebehind.pending", pending, Map::size)
+                .description("Beers with stock movements not yet written")
+                .register(meterRegistry);
+        Gauge.builder("inventory.writebehind.coalescing.ratio", this, InventoryWriteBehind::coalescingRatio)
+                .description("Stock movements per row update")
+                .register(meterRegistry);
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        // ticks arriving while a flush runs are dropped, the flush after it picks up their deltas
+        scheduledFlushes = Flux.interval(window)
+                .onBackpressureDrop()
+                .flatMap(tick -> flush().onErrorResume(e -> {
+                    log.error("Writing inventory deltas failed, retrying with the next flush", e);
+                    return Mono.empty();
+                }), 1)
+                .subscribe();
+    }
+
+    @Override
+    public void destroy() {
+        scheduledFlushes.dispose();
+
+        // waits for a flush already under way, then writes until nothing is pending, so deltas arriving
+        // while either writes are written too. a failed write leaves its deltas pending and ends it
+        long deadline = System.nanoTime() + SHUTDOWN_TIMEOUT.toNanos();
+        try {
+            int written = flush().block(SHUTDOWN_TIMEOUT);
+            while (!pending.isEmpty()) {
+                Duration remaining = Duration.ofNanos(deadline - System.nanoTime());
+                if (remaining.isNegative()) {
+                    throw new IllegalStateException("Timed out after " + SHUTDOWN_TIMEOUT);
+                }
+                written += write().block(remaining);
+            }
+            log.debug("Inventory deltas written on shutdown, {} rows changed", written);
+        } catch (RuntimeException e) {
+            log.error("Inventory deltas for {} beers were not written", pending.size(), e);
+        }
+    }
+
+    /**
+     * Buffers delta for the beer, summed with whatever is pending for it. Completes at once unless the
+     * buffer is full, then once the next flush has made room, or with its error.
+     */
+    public Mono<Void> add(Integer beerId, int delta) {
+        return Mono.defer(() -> {
+            // adding to a beer already pending does not grow the buffer
+            if (pending.size() >= maxPending && !pending.containsKey(beerId)) {
+                return flush().then(add(beerId, delta));
+            }
+
+            pending.merge(beerId, delta, InventoryWriteBehind::sum);
+            deltas.increment();
+            return Mono.empty();
+        });
+    }
+
+    /**
+     * Called with the beer id and the quantity on hand in the database when a delta is turned down as
+     * it would take the beer's stock below zero. The delta, already taken from the buffer, is dropped.
+     */
+    public void onRejected(BiConsumer<Integer, Integer> listener) {
+        this.rejectionListener = listener;
+    }
+
+    /**
+     * The delta pending for a beer, zero when there is none.
+     */
+    public int pending(Integer beerId) {
+        return pending.getOrDefault(beerId, 0);
+    }
+
+    /**
+     * Drops what is pending for a beer that has been deleted.
+     */
+    public void discard(Integer beerId) {
+        pending.remove(beerId);
+    }
+
+    /**
+     * Writes everything pending, emitting the number of rows changed.
+     */
+    public Mono<Integer> flush() {
+        return flushes.load(FLUSH, this::write);
+    }
+
+    private Mono<Integer> write() {
+        Map<Integer, Integer> batch = new HashMap<>();
+
+        // a delta arriving after its beer's entry is taken starts a new entry, left for the next flush
+        for (Integer beerId : pending.keySet()) {
+            Integer delta = pending.remove(beerId);
+            if (delta != null) {
+                batch.put(beerId, delta);
+            }
+        }
+
+        if (batch.isEmpty()) {
+            return Mono.just(0);
+        }
+
+        Timer.Sample sample = Timer.start();
+
+        // subscribed off the caller's thread, the H2 driver runs statements on the subscribing thread
+        return beerRepository.adjustInventory(batch)
+                .doOnError(e -> batch.forEach((beerId, delta) -> pending.merge(beerId, delta, InventoryWriteBehind::sum)))
+                .flatMap(unapplied -> unapplied.isEmpty() ? Mono.just(batch.size()) : reconcile(batch, unapplied))
+                .subscribeOn(Schedulers.boundedElastic())
+                .doOnNext(updated -> {
+                    sample.stop(flushTimer);
+                    rows.increment(updated);
+                });
+    }
+
+    /**
+     * Of the beers whose delta was not applied, those still there turned it down: their counter held
+     * stock the database did not have. Each is logged and handed to the rejection listener.
+     */
+    private Mono<Integer> reconcile(Map<Integer, Integer> batch, Set<Integer> unapplied) {
+        return beerRepository.findAllById(unapplied)
+                .doOnNext(beer -> {
+                    int quantityOnHand = beer.getQuantityOnHand() == null ? 0 : beer.getQuantityOnHand();
+
+                    rejected.increment();
+                    log.warn("Inventory delta {} for beer {} turned down, {} on hand", batch.get(beer.getId()), beer.getId(), quantityOnHand);
+                    rejectionListener.accept(beer.getId(), quantityOnHand);
+                })
+                .count()
+                .doOnNext(rejectedCount -> {
+                    if (rejectedCount < unapplied.size()) {
+                        log.debug("Inventory deltas for {} deleted beers dropped", unapplied.size() - rejectedCount);
+                    }
+                })
+                .onErrorResume(e -> {
+                    log.error("Inventory deltas for beers {} were not applied and could not be reconciled", unapplied, e);
+                    return Mono.just(0L);
+                })
+                .thenReturn(batch.size() - unapplied.size());
+    }
+
+    private double coalescingRatio() {
+        return rows.count() == 0 ? 0 : deltas.count() / rows.count();
+    }
+
+    // a sum of zero removes the entry, so a reservation and its release write nothing
+    private static Integer sum(Integer pendingDelta, Integer delta) {
+        int sum = pendingDelta + delta;
+        return sum == 0 ? null : sum;
+    }
+}
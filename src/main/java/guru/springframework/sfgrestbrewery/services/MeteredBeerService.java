@@ -0,0 +1,172 @@
+package guru.springframework.sfgrestbrewery.services;
+
+import guru.springframework.sfgrestbrewery.web.model.BeerDto;
+import guru.springframework.sfgrestbrewery.web.model.BeerLookupResult;
+import guru.springframework.sfgrestbrewery.web.model.BeerPagedList;
+import guru.springframework.sfgrestbrewery.web.model.BeerStyleEnum;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.RequiredArgsConstructor;
+import lombok.Value;
+import org.springframework.context.annotation.Primary;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+import org.springframework.util.StringUtils;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Times every BeerService call into the beer.service timer, tagged by operation, list filter shape
+ * (name, style, both or none) and outcome (success, empty, error or cancelled).
+ *
+ * The timer count per outcome gives throughput, error and empty result rates. Cache hit ratios come
+ * from the cache.gets metrics the actuator already binds for the Caffeine caches.
+ */
+@Primary
+@Service
+@RequiredArgsConstructor
+public class MeteredBeerService implements BeerService {
+
+    private static final String NO_FILTER = "none";
+
+    private final BeerServiceImpl beerService;
+    private final MeterRegistry meterRegistry;
+
+    private final ConcurrentMap<TimerKey, Timer> timers = new ConcurrentHashMap<>();
+
+    @Override
+    public Mono<BeerPagedList> listBeers(String beerName, BeerStyleEnum beerStyle, PageRequest pageRequest, Boolean showInventoryOnHand) {
+        return timed("listBeers", filter(beerName, beerStyle),
+                beerService.listBeers(beerName, beerStyle, pageRequest, showInventoryOnHand));
+    }
+
+    @Override
+    public Mono<BeerPagedList> listBeersAfter(String beerName, BeerStyleEnum beerStyle, String afterCursor, Integer pageSize, Boolean showInventoryOnHand) {
+        return timed("listBeersAfter", filter(beerName, beerStyle),
+                beerService.listBeersAfter(beerName, beerStyle, afterCursor, pageSize, showInventoryOnHand));
+    }
+
+    @Override
+    public Flux<BeerDto> streamBeers(String beerName, BeerStyleEnum beerStyle, Boolean showInventoryOnHand) {
+        return timed("streamBeers", filter(beerName, beerStyle),
+                beerService.streamBeers(beerName, beerStyle, showInventoryOnHand));
+    }
+
+    @Override
+    public Mono<BeerDto> getById(Integer beerId, Boolean showInventoryOnHand) {
+        return timed("getById", NO_FILTER, beerService.getById(beerId, showInventoryOnHand));
+    }
+
+    @Override
+    public Mono<BeerDto> saveBeer(BeerDto beerDto) {
+        return timed("saveBeer", NO_FILTER, beerService.saveBeer(beerDto));
+    }
+
+    @Override
+    public Mono<BeerDto> saveBeerMono(Mono<BeerDto> beerDto) {
+        return timed("saveBeer", NO_FILTER, beerService.saveBeerMono(beerDto));
+    }
+
+    @Override
+    public Flux<BeerDto> saveBeers(List<BeerDto> beerDtos) {
+        return timed("saveBeers", NO_FILTER, beerService.saveBeers(beerDtos));
+    }
+
+    @Override
+    public Mono<BeerDto> updateBeer(Integer beerId, BeerDto beerDto) {
+        return timed("updateBeer", NO_FILTER, beerService.updateBeer(beerId, beerDto));
+    }
+
+    @Override
+    public Mono<BeerDto> getByUpc(String upc) {
+        return timed("getByUpc", NO_FILTER, beerService.getByUpc(upc));
+    }
+
+    @Override
+    public Flux<BeerLookupResult> getByIds(List<Integer> beerIds) {
+        return timed("getByIds", NO_FILTER, beerService.getByIds(beerIds));
+    }
+
+    @Override
+    public Flux<BeerLookupResult> getByUpcs(List<String> upcs) {
+        return timed("getByUpcs", NO_FILTER, beerService.getByUpcs(upcs));
+    }
+
+    @Override
+    public Flux<BeerDto> searchBeers(String query, Integer limit) {
+        return timed("searchBeers", NO_FILTER, beerService.searchBeers(query, limit));
+    }
+
+    @Override
+    public Mono<Void> deleteBeerByIdReactive(Integer beerId) {
+        // completing without a value is the normal outcome of a delete, not an empty result
+        return timed("deleteBeerById", NO_FILTER, beerService.deleteBeerByIdReactive(beerId).thenReturn(Boolean.TRUE))
+                .then();
+    }
+
+    private <T> Mono<T> timed(String operation, String filter, Mono<T> mono) {
+        return Mono.defer(() -> {
+            Timer.Sample sample = Timer.start(meterRegistry);
+
+            return mono.doOnSuccess(value -> stop(sample, operation, filter, value == null ? "empty" : "success", null))
+                    .doOnError(e -> stop(sample, operation, filter, "error", e))
+                    .doOnCancel(() -> stop(sample, operation, filter, "cancelled", null));
+        });
+    }
+
+    private <T> Flux<T> timed(String operation, String filter, Flux<T> flux) {
+        return Flux.defer(() -> {
+            Timer.Sample sample = Timer.start(meterRegistry);
+            AtomicBoolean emitted = new AtomicBoolean();
+
+            return flux.doOnNext(value -> emitted.set(true))
+                    .doOnComplete(() -> stop(sample, operation, filter, emitted.get() ? "success" : "empty", null))
+                    .doOnError(e -> stop(sample, operation, filter, "error", e))
+                    .doOnCancel(() -> stop(sample, operation, filter, "cancelled", null));
+        });
+    }
+
+    private void stop(Timer.Sample sample, String operation, String filter, String outcome, Throwable error) {
+        TimerKey key = new TimerKey(operation, filter, outcome, error == null ? "none" : error.getClass().getSimpleName());
+
+        // built and registered once per tag combination, not on every call
+        sample.stop(timers.computeIfAbsent(key, this::timer));
+    }
+
+    private Timer timer(TimerKey key) {
+        return Timer.builder("beer.service")
+                .description("BeerService calls")
+                .tag("operation", key.getOperation())
+                .tag("filter", key.getFilter())
+                .tag("outcome", key.getOutcome())
+                .tag("exception", key.getException())
+                .publishPercentileHistogram()
+                .minimumExpectedValue(Duration.ofMillis(1))
+                .maximumExpectedValue(Duration.ofSeconds(10))
+                .register(meterRegistry);
+    }
+
+    private static String filter(String beerName, BeerStyleEnum beerStyle) {
+        boolean byName = StringUtils.hasLength(beerName);
+        boolean byStyle = beerStyle != null;
+
+        if (byName && byStyle) {
+            return "both";
+        }
+        return byName ? "name" : byStyle ? "style" : NO_FILTER;
+    }
+
+    @Value
+    private static class TimerKey {
+        String operation;
+        String filter;
+        String outcome;
+        String exception;
+    }
+}
@@ -0,0 +1,41 @@
+package guru.springframework.sfgrestbrewery.services;
+
+import reactor.core.publisher.Mono;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+/**
+ * Coalesces concurrent loads of the same key: callers arriving while a load is in flight
+ * share its result instead of starting their own. Nothing is kept once the load completes.
+ */
+class SingleFlight<K, V> {
+
+    private final ConcurrentMap<K, Mono<V>> inFlight = new ConcurrentHashMap<>();
+
+    Mono<V> load(K key, Supplier<Mono<V>> loader) {
+        return Mono.defer(() -> inFlight.computeIfAbsent(key, k -> share(k, loader)));
+    }
+
+    /**
+     * Stops new callers from joining a load that was started before the key changed.
+     */
+    void forget(K key) {
+        inFlight.remove(key);
+    }
+
+    private Mono<V> share(K key, Supplier<Mono<V>> loader) {
+        AtomicReference<Mono<V>> shared = new AtomicReference<>();
+
+        // the key is released as the result reaches cache(), before cache() hands it on, so a caller
+        // loading again as it receives the result starts a new load rather than getting this one.
+        // cache() keeps the load running for the other callers if one of them cancels
+        shared.set(Mono.defer(loader)
+                .doOnEach(signal -> inFlight.remove(key, shared.get()))
+                .doOnCancel(() -> inFlight.remove(key, shared.get()))
+                .cache());
+        return shared.get();
+    }
+}
@@ -1,11 +1,14 @@
 package guru.springframework.sfgrestbrewery.web.controller;
 
 import guru.springframework.sfgrestbrewery.services.BeerService;
+import guru.springframework.sfgrestbrewery.services.InvalidCursorException;
 import guru.springframework.sfgrestbrewery.web.model.BeerDto;
 import guru.springframework.sfgrestbrewery.web.model.BeerPagedList;
 import guru.springframework.sfgrestbrewery.web.model.BeerStyleEnum;
 import lombok.NoArgsConstructor;
 import lombok.RequiredArgsConstructor;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.OptimisticLockingFailureException;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
@@ -15,8 +18,6 @@ import org.springframework.web.util.UriComponentsBuilder;
 import reactor.core.publisher.Mono;
 
 import java.util.UUID;
-import java.util.concurrent.atomic.AtomicBoolean;
-import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Created by jt on 2019-04-20.
@@ -36,7 +37,8 @@ public class BeerController {
                                                          @RequestParam(value = "pageSize", required = false) Integer pageSize,
                                                          @RequestParam(value = "beerName", required = false) String beerName,
                                                          @RequestParam(value = "beerStyle", required = false) BeerStyleEnum beerStyle,
-                                                         @RequestParam(value = "showInventoryOnHand", required = false) Boolean showInventoryOnHand) {
+                                                         @RequestParam(value = "showInventoryOnHand", required = false) Boolean showInventoryOnHand,
+                                                         @RequestParam(value = "after", required = false) String after) {
 
         if (showInventoryOnHand == null) {
             showInventoryOnHand = false;
@@ -49,23 +51,26 @@ public class BeerController {
         if (pageSize == null || pageSize < 1) {
             pageSize = DEFAULT_PAGE_SIZE;
         }
+
+        if (after != null) {
+            // keyset mode, an empty cursor starts from the first beer
+            return ResponseEntity.ok(beerService.listBeersAfter(beerName, beerStyle, after, pageSize, showInventoryOnHand));
+        }
         return ResponseEntity.ok(beerService.listBeers(beerName, beerStyle, PageRequest.of(pageNumber, pageSize), showInventoryOnHand));
     }
 
     @GetMapping("beer/{beerId}")
-    public ResponseEntity<Mono<BeerDto>> getBeerById(@PathVariable("beerId") Integer beerId,
+    public Mono<ResponseEntity<BeerDto>> getBeerById(@PathVariable("beerId") Integer beerId,
                                                      @RequestParam(value = "showInventoryOnHand", required = false) Boolean showInventoryOnHand) {
 
         if (showInventoryOnHand == null) {
             showInventoryOnHand = false;
         }
-        return ResponseEntity.ok(beerService.getById(beerId, showInventoryOnHand)
-                .defaultIfEmpty(BeerDto.builder().build())
-                .doOnNext(beerDto -> {
-                    if (beerDto.getId() == null){
-                        throw new NotFoundException();
-                    }
-                }));
+        return beerService.getById(beerId, showInventoryOnHand)
+                .map(beerDto -> ResponseEntity.ok()
+                        .headers(BeerValidators.of(beerDto))
+                        .body(beerDto))
+                .switchIfEmpty(Mono.error(NotFoundException::new));
     }
 
     @GetMapping("beerUpc/{upc}")
@@ -74,40 +79,28 @@ public class BeerController {
     }
 
     @PostMapping(path = "beer")
-    public ResponseEntity saveNewBeer(@RequestBody @Validated BeerDto beerDto) {
-
-        AtomicInteger atomicIntegerBeerID = new AtomicInteger();
-        beerService.saveBeer(beerDto).subscribe(newBeer -> atomicIntegerBeerID.set(newBeer.getId()));
-
-        return ResponseEntity
-                .created(UriComponentsBuilder
-                        .fromHttpUrl("http://api.springframework.guru/api/v1/beer/" + atomicIntegerBeerID.get())
-                        .build().toUri())
-                .build();
+    public Mono<ResponseEntity<Void>> saveNewBeer(@RequestBody @Validated BeerDto beerDto) {
+
+        return beerService.saveBeer(beerDto)
+                .map(savedDto -> ResponseEntity
+                        .created(UriComponentsBuilder
+                                .fromHttpUrl("http://api.springframework.guru/api/v1/beer/" + savedDto.getId())
+                                .build().toUri())
+                        .build());
     }
 
     @PutMapping("beer/{beerId}")
-    public ResponseEntity updateBeerById(@PathVariable("beerId") Integer beerId, @RequestBody @Validated BeerDto beerDto) {
-
-        AtomicBoolean atomicBoolean = new AtomicBoolean(false);
-        beerService.updateBeer(beerId, beerDto)
-                .subscribe(savedDto -> {
-                    if (savedDto.getId() != null) atomicBoolean.set(true);
-                });
-
-        if (atomicBoolean.get()) {
-            return ResponseEntity.noContent().build();
-        } else {
-            return ResponseEntity.notFound().build();
-        }
+    public Mono<ResponseEntity<Void>> updateBeerById(@PathVariable("beerId") Integer beerId, @RequestBody @Validated BeerDto beerDto) {
 
+        return beerService.updateBeer(beerId, beerDto)
+                .map(savedDto -> ResponseEntity.noContent().build());
     }
 
     @DeleteMapping("beer/{beerId}")
-    public ResponseEntity<Void> deleteBeerById(@PathVariable("beerId") Integer beerId) {
+    public Mono<ResponseEntity<Void>> deleteBeerById(@PathVariable("beerId") Integer beerId) {
 
-        beerService.deleteBeerById(beerId);
-        return ResponseEntity.ok().build();
+        return beerService.deleteBeerByIdReactive(beerId)
+                .thenReturn(ResponseEntity.ok().build());
     }
 
 
@@ -116,4 +109,14 @@ public class BeerController {
         return ResponseEntity.notFound().build();
     }
 
+    @ExceptionHandler
+    ResponseEntity<String> handleInvalidCursor(InvalidCursorException ex) {
+        return ResponseEntity.badRequest().body(ex.getMessage());
+    }
+
+    @ExceptionHandler({DataIntegrityViolationException.class, OptimisticLockingFailureException.class})
+    ResponseEntity<Void> handleConflict(RuntimeException ex) {
+        return ResponseEntity.status(HttpStatus.CONFLICT).build();
+    }
+
 }
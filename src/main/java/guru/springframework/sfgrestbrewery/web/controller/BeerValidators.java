@@ -0,0 +1,38 @@
+package guru.springframework.sfgrestbrewery.web.controller;
+
+import guru.springframework.sfgrestbrewery.web.model.BeerDto;
+import org.springframework.http.HttpHeaders;
+
+import java.time.ZoneId;
+import java.util.function.Consumer;
+
+/**
+ * ETag and Last-Modified for a single beer, shared by the v1 and v2 apis.
+ *
+ * With these set, WebFlux answers If-None-Match / If-Modified-Since with 304 before the body is written.
+ * A beer shown with its stock has no Last-Modified, as its stock can change while its date does not.
+ */
+public final class BeerValidators {
+
+    private BeerValidators() {
+    }
+
+    public static Consumer<HttpHeaders> of(BeerDto beerDto) {
+        return headers -> {
+            if (beerDto.getVersion() != null) {
+                headers.setETag(eTag(beerDto));
+            }
+            // stock moves without touching lastUpdatedDate, so the inventory view relies on the ETag alone
+            if (beerDto.getLastUpdatedDate() != null && beerDto.getQuantityOnHand() == null) {
+                headers.setLastModified(beerDto.getLastUpdatedDate().atZone(ZoneId.systemDefault()).toInstant());
+            }
+        };
+    }
+
+    private static String eTag(BeerDto beerDto) {
+        // inventory changes without a new version, so the inventory view carries it in the tag
+        String inventory = beerDto.getQuantityOnHand() == null ? "" : "-" + beerDto.getQuantityOnHand();
+
+        return "\"" + beerDto.getId() + "-" + beerDto.getVersion() + inventory + "\"";
+    }
+}
@@ -2,53 +2,57 @@ package guru.springframework.sfgrestbrewery.web.controller;
 
 import guru.springframework.sfgrestbrewery.services.CustomerService;
 import guru.springframework.sfgrestbrewery.web.model.CustomerDto;
-import org.springframework.http.HttpHeaders;
-import org.springframework.http.HttpStatus;
+import lombok.RequiredArgsConstructor;
 import org.springframework.http.ResponseEntity;
 import org.springframework.validation.annotation.Validated;
 import org.springframework.web.bind.annotation.*;
+import reactor.core.publisher.Mono;
 
+import java.net.URI;
 import java.util.UUID;
 
 /**
  * Created by jt on 2019-04-21.
  */
 
+@RequiredArgsConstructor
 @RequestMapping("api/v1/customer")
 @RestController
 public class CustomerController {
 
-    private CustomerService customerService;
-
-    public CustomerController(CustomerService customerService) {
-        this.customerService = customerService;
-    }
+    private final CustomerService customerService;
 
     @GetMapping("/{customerId}")
-    public ResponseEntity<CustomerDto> getCustomer(@PathVariable("customerId")  UUID customerId){
+    public Mono<ResponseEntity<CustomerDto>> getCustomer(@PathVariable("customerId") UUID customerId) {
 
-        return new ResponseEntity<>(customerService.getCustomerById(customerId), HttpStatus.OK);
+        return customerService.getCustomerById(customerId)
+                .map(ResponseEntity::ok)
+                .defaultIfEmpty(ResponseEntity.notFound().build());
     }
 
     @PostMapping
-    public ResponseEntity handlePost(@RequestBody @Validated CustomerDto customerDto){
-        CustomerDto savedDto = customerService.saveNewCustomer(customerDto);
-
-        HttpHeaders httpHeaders = new HttpHeaders();
-        httpHeaders.add("Location", "/api/v1/customer/" + savedDto.getId().toString());
+    public Mono<ResponseEntity<Void>> handlePost(@RequestBody @Validated CustomerDto customerDto) {
 
-        return new ResponseEntity(httpHeaders, HttpStatus.CREATED);
+        return customerService.saveNewCustomer(customerDto)
+                .map(savedDto -> ResponseEntity.created(URI.create("/api/v1/customer/" + savedDto.getId())).build());
     }
 
     @PutMapping("/{customerId}")
-    @ResponseStatus(HttpStatus.NO_CONTENT)
-    public void handleUpdate(@PathVariable("customerId") UUID customerId, @Validated @RequestBody CustomerDto customerDto){
-        customerService.updateCustomer(customerId, customerDto);
+    public Mono<ResponseEntity<Void>> handleUpdate(@PathVariable("customerId") UUID customerId, @Validated @RequestBody CustomerDto customerDto) {
+
+        return customerService.updateCustomer(customerId, customerDto)
+                .thenReturn(ResponseEntity.noContent().build());
     }
 
     @DeleteMapping("/{customerId}")
-    public void deleteById(@PathVariable("customerId")  UUID customerId){
-        customerService.deleteById(customerId);
+    public Mono<ResponseEntity<Void>> deleteById(@PathVariable("customerId") UUID customerId) {
+
+        return customerService.deleteById(customerId)
+                .thenReturn(ResponseEntity.noContent().build());
     }
 
+    @ExceptionHandler
+    ResponseEntity<Void> handleNotFound(NotFoundException ex) {
+        return ResponseEntity.notFound().build();
+    }
 }
@@ -0,0 +1,11 @@
+package guru.springframework.sfgrestbrewery.web.controller;
+
+/**
+ * A reservation asked for more units than the beer has on hand.
+ */
+public class InsufficientInventoryException extends RuntimeException {
+
+    public InsufficientInventoryException(Integer beerId, int quantity) {
+        super("Beer " + beerId + " has fewer than " + quantity + " units on hand");
+    }
+}
@@ -0,0 +1,136 @@
+package guru.springframework.sfgrestbrewery.web.filter;
+
+import lombok.extern.slf4j.Slf4j;
+import org.reactivestreams.Publisher;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.server.reactive.HttpHandler;
+import org.springframework.http.server.reactive.HttpHandlerDecoratorFactory;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.http.server.reactive.ServerHttpResponseDecorator;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.HandlerMapping;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.server.WebFilter;
+import org.springframework.web.server.WebFilterChain;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * One JSON line per sampled request on the "access" logger: method, route, path, status, latency and
+ * response bytes. Server errors are always logged, other requests at sfg.brewery.access-log.sample-rate.
+ *
+ * Status, bytes and latency are taken around the whole HttpHandler rather than the filter chain, so
+ * responses written by the WebExceptionHandlers, error bodies included, are measured as sent. The
+ * WebFilter half only hands the exchange over for the route the request was matched to.
+ *
+ * logback-spring.xml writes the access logger through an async appender, off the event loop.
+ */
+@Slf4j(topic = "access")
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE)
+@ConditionalOnProperty(name = "sfg.brewery.access-log.enabled", matchIfMissing = true)
+public class AccessLogWebFilter implements HttpHandlerDecoratorFactory, WebFilter {
+
+    private final double sampleRate;
+
+    public AccessLogWebFilter(@Value("${sfg.brewery.access-log.sample-rate:1.0}") double sampleRate) {
+        this.sampleRate = sampleRate;
+    }
+
+    @Override
+    public HttpHandler apply(HttpHandler httpHandler) {
+        return (request, response) -> {
+            long start = System.nanoTime();
+            ByteCountingResponse countingResponse = new ByteCountingResponse(response);
+
+            return httpHandler.handle(request, countingResponse)
+                    .doFinally(signal -> {
+                        HttpStatus status = countingResponse.getStatusCode() == null ? HttpStatus.OK : countingResponse.getStatusCode();
+
+                        if (status.is5xxServerError() || ThreadLocalRandom.current().nextDouble() < sampleRate) {
+                            log.info(entry(request, countingResponse.getExchange(), status,
+                                    System.nanoTime() - start, countingResponse.getBytes()));
+                        }
+                    });
+        };
+    }
+
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, WebFilterChain chain) {
+        ServerHttpResponse response = exchange.getResponse();
+
+        while (response instanceof ServerHttpResponseDecorator) {
+            if (response instanceof ByteCountingResponse) {
+                ((ByteCountingResponse) response).exchange = exchange;
+                break;
+            }
+            response = ((ServerHttpResponseDecorator) response).getDelegate();
+        }
+
+        return chain.filter(exchange);
+    }
+
+    private static String entry(ServerHttpRequest request, ServerWebExchange exchange, HttpStatus status, long latencyNanos, long bytes) {
+        // no exchange when the request failed before reaching the filter chain
+        Object route = exchange == null ? null : exchange.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE);
+
+        return "{\"method\":\"" + request.getMethodValue() + "\"" +
+                ",\"route\":\"" + (route == null ? "" : escape(route.toString())) + "\"" +
+                ",\"path\":\"" + escape(request.getPath().value()) + "\"" +
+                ",\"status\":" + status.value() +
+                ",\"latencyMs\":" + TimeUnit.NANOSECONDS.toMicros(latencyNanos) / 1000.0 +
+                ",\"bytes\":" + bytes + "}";
+    }
+
+    private static String escape(String value) {
+        return value.replace("\\", "\\\\").replace("\"", "\\\"");
+    }
+
+    private static class ByteCountingResponse extends ServerHttpResponseDecorator {
+
+        private final AtomicLong bytes = new AtomicLong();
+
+        private volatile ServerWebExchange exchange;
+
+        ByteCountingResponse(ServerHttpResponse delegate) {
+            super(delegate);
+        }
+
+        @Override
+        public Mono<Void> writeWith(Publisher<? extends DataBuffer> body) {
+            // keep single buffer bodies a Mono, the server writes those without chunked encoding
+            if (body instanceof Mono) {
+                return super.writeWith(Mono.from(body).doOnNext(this::count));
+            }
+            return super.writeWith(Flux.from(body).doOnNext(this::count));
+        }
+
+        @Override
+        public Mono<Void> writeAndFlushWith(Publisher<? extends Publisher<? extends DataBuffer>> body) {
+            return super.writeAndFlushWith(Flux.from(body)
+                    .map(chunk -> Flux.from(chunk).doOnNext(this::count)));
+        }
+
+        private void count(DataBuffer buffer) {
+            bytes.addAndGet(buffer.readableByteCount());
+        }
+
+        long getBytes() {
+            return bytes.get();
+        }
+
+        ServerWebExchange getExchange() {
+            return exchange;
+        }
+    }
+}
@@ -12,9 +12,14 @@ import org.mapstruct.Mapping;
 public interface BeerMapper {
 
     @Mapping(target="quantityOnHand", ignore = true)
+    @Mapping(target="lastUpdatedDate", source = "lastModifiedDate")
     BeerDto beerToBeerDto(Beer beer);
 
+    @Mapping(target="lastUpdatedDate", source = "lastModifiedDate")
     BeerDto beerToBeerDtoWithInventory(Beer beer);
 
+    @Mapping(target="version", ignore = true)
+    @Mapping(target="createdDate", ignore = true)
+    @Mapping(target="lastModifiedDate", ignore = true)
     Beer beerDtoToBeer(BeerDto dto);
 }
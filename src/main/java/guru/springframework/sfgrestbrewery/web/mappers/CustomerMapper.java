@@ -3,6 +3,7 @@ package guru.springframework.sfgrestbrewery.web.mappers;
 import guru.springframework.sfgrestbrewery.domain.Customer;
 import guru.springframework.sfgrestbrewery.web.model.CustomerDto;
 import org.mapstruct.Mapper;
+import org.mapstruct.Mapping;
 
 /**
  * Created by jt on 2019-05-25.
@@ -10,6 +11,7 @@ import org.mapstruct.Mapper;
 @Mapper
 public interface CustomerMapper {
 
+    @Mapping(target = "version", ignore = true)
     Customer customerDtoToCustomer(CustomerDto dto);
 
     CustomerDto customerToCustomerDto(Customer customer);
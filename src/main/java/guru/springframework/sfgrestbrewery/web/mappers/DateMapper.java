@@ -3,19 +3,20 @@ package guru.springframework.sfgrestbrewery.web.mappers;
 import org.springframework.stereotype.Component;
 
 import java.sql.Timestamp;
+import java.time.LocalDateTime;
 import java.time.OffsetDateTime;
 import java.time.ZoneOffset;
 
 /**
  * Created by jt on 2019-05-25.
+ *
+ * Each conversion allocates only the LocalDateTime it needs and the value it returns.
  */
 @Component
 public class DateMapper {
     public OffsetDateTime asOffsetDateTime(Timestamp ts){
         if (ts != null){
-            return OffsetDateTime.of(ts.toLocalDateTime().getYear(), ts.toLocalDateTime().getMonthValue(),
-                    ts.toLocalDateTime().getDayOfMonth(), ts.toLocalDateTime().getHour(), ts.toLocalDateTime().getMinute(),
-                    ts.toLocalDateTime().getSecond(), ts.toLocalDateTime().getNano(), ZoneOffset.UTC);
+            return OffsetDateTime.of(ts.toLocalDateTime(), ZoneOffset.UTC);
         } else {
             return null;
         }
@@ -23,7 +24,8 @@ public class DateMapper {
 
     public Timestamp asTimestamp(OffsetDateTime offsetDateTime){
         if(offsetDateTime != null) {
-            return Timestamp.valueOf(offsetDateTime.atZoneSameInstant(ZoneOffset.UTC).toLocalDateTime());
+            // the UTC wall clock straight from the instant, without an intermediate ZonedDateTime
+            return Timestamp.valueOf(LocalDateTime.ofEpochSecond(offsetDateTime.toEpochSecond(), offsetDateTime.getNano(), ZoneOffset.UTC));
         } else {
             return null;
         }
@@ -0,0 +1,31 @@
+package guru.springframework.sfgrestbrewery.web.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+/**
+ * A change to a beer's stock or price, or its deletion, as pushed to live dashboards. What did not change
+ * is null.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class BeerChange {
+
+    private Integer beerId;
+
+    private Integer quantityOnHand;
+
+    private BigDecimal price;
+
+    // true when the beer has been deleted, the last change sent for it
+    private Boolean deleted;
+
+    private LocalDateTime changedDate;
+}
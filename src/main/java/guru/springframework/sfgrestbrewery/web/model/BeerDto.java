@@ -24,6 +24,8 @@ public class BeerDto {
     @Null
     private Integer id;
 
+    private Long version;
+
     @NotBlank
     private String beerName;
 
@@ -0,0 +1,24 @@
+package guru.springframework.sfgrestbrewery.web.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * One entry of a batch lookup, in the position of the requested id or upc. beer is null when found is false.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class BeerLookupResult {
+
+    private Integer id;
+
+    private String upc;
+
+    private boolean found;
+
+    private BeerDto beer;
+}
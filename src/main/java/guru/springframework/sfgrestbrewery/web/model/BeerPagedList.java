@@ -2,6 +2,8 @@ package guru.springframework.sfgrestbrewery.web.model;
 
 
 import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import com.fasterxml.jackson.databind.JsonNode;
 import org.springframework.data.domain.PageImpl;
@@ -18,6 +20,16 @@ public class BeerPagedList extends PageImpl<BeerDto> implements Serializable {
 
     static final long serialVersionUID = 1114715135625836949L;
 
+    /**
+     * Cursor to pass as 'after' for the next keyset page, null when there are no more beers
+     * or when the page was fetched by page number.
+     */
+    private String nextCursor;
+
+    // keyset pages have no page number, first and last follow from the cursors instead
+    private boolean keyset;
+    private boolean firstKeysetPage;
+
     @JsonCreator(mode = JsonCreator.Mode.PROPERTIES)
     public BeerPagedList(@JsonProperty("content") List<BeerDto> content,
                          @JsonProperty("number") int number,
@@ -28,16 +40,82 @@ public class BeerPagedList extends PageImpl<BeerDto> implements Serializable {
                          @JsonProperty("totalPages") int totalPages,
                          @JsonProperty("sort") JsonNode sort,
                          @JsonProperty("first") boolean first,
-                         @JsonProperty("numberOfElements") int numberOfElements) {
+                         @JsonProperty("numberOfElements") int numberOfElements,
+                         @JsonProperty("nextCursor") String nextCursor) {
 
         super(content, PageRequest.of(number, size), totalElements);
+        this.nextCursor = nextCursor;
     }
 
     public BeerPagedList(List<BeerDto> content, Pageable pageable, long total) {
         super(content, pageable, total);
     }
 
+    /**
+     * A keyset page, first when it was fetched without a cursor.
+     */
+    public BeerPagedList(List<BeerDto> content, int pageSize, long total, boolean first, String nextCursor) {
+        super(content, PageRequest.of(0, pageSize), total);
+        this.nextCursor = nextCursor;
+        this.keyset = true;
+        this.firstKeysetPage = first;
+    }
+
     public BeerPagedList(List<BeerDto> content) {
         super(content);
     }
+
+    public String getNextCursor() {
+        return nextCursor;
+    }
+
+    @JsonIgnore
+    @Override
+    public int getNumber() {
+        return super.getNumber();
+    }
+
+    /**
+     * The page number, left out of keyset pages.
+     */
+    @JsonProperty("number")
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    public Integer getPageNumber() {
+        return keyset ? null : super.getNumber();
+    }
+
+    @JsonIgnore
+    @Override
+    public Pageable getPageable() {
+        return super.getPageable();
+    }
+
+    /**
+     * The page request, left out of keyset pages as its offset would always be 0.
+     */
+    @JsonProperty("pageable")
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    public Pageable getPageRequest() {
+        return keyset ? null : super.getPageable();
+    }
+
+    @Override
+    public boolean isFirst() {
+        return keyset ? firstKeysetPage : super.isFirst();
+    }
+
+    @Override
+    public boolean isLast() {
+        return keyset ? nextCursor == null : super.isLast();
+    }
+
+    @Override
+    public boolean hasNext() {
+        return keyset ? nextCursor != null : super.hasNext();
+    }
+
+    @Override
+    public boolean hasPrevious() {
+        return keyset ? !firstKeysetPage : super.hasPrevious();
+    }
 }
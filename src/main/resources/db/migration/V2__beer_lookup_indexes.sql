@@ -0,0 +1,3 @@
+CREATE UNIQUE INDEX IF NOT EXISTS ux_beer_upc ON beer (upc);
+
+CREATE INDEX IF NOT EXISTS ix_beer_style_name ON beer (beer_style, beer_name);
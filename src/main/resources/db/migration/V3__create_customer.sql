@@ -0,0 +1,6 @@
+CREATE TABLE IF NOT EXISTS customer
+(
+    id      uuid NOT NULL PRIMARY KEY,
+    name    varchar(100) NOT NULL,
+    version integer
+);
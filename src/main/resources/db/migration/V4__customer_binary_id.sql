@@ -0,0 +1 @@
+ALTER TABLE customer ALTER COLUMN id BINARY(16) NOT NULL;
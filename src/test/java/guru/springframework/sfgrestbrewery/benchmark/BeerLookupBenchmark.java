@@ -0,0 +1,101 @@
+package guru.springframework.sfgrestbrewery.benchmark;
+
+import guru.springframework.sfgrestbrewery.config.Config;
+import guru.springframework.sfgrestbrewery.config.VersionedSchemaPopulator;
+import io.r2dbc.spi.Connection;
+import io.r2dbc.spi.ConnectionFactories;
+import io.r2dbc.spi.ConnectionFactory;
+import io.r2dbc.spi.Result;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.core.io.support.PathMatchingResourcePatternResolver;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Lookup latency of the queries behind findByUpc and the listBeers filters, with and
+ * without the V2 lookup indexes.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx3g", "-Dlogback.configurationFile=logback-benchmark.xml"})
+public class BeerLookupBenchmark {
+
+    @Param({"1000000"})
+    int rows;
+
+    @Param({"false", "true"})
+    boolean indexed;
+
+    // one connection for the whole trial, so connection setup does not hide the query cost
+    Connection connection;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        ConnectionFactory connectionFactory = ConnectionFactories.get("r2dbc:h2:mem:///beer-lookup?options=DB_CLOSE_DELAY=-1");
+        connection = Mono.from(connectionFactory.create()).block();
+
+        new VersionedSchemaPopulator(new ClassPathResource("db/migration/V1__create_beer.sql")).populate(connection).block();
+
+        Flux.from(connection.createStatement(BenchmarkData.insertBeers(rows)).execute())
+                .flatMap(Result::getRowsUpdated)
+                .blockLast();
+
+        if (indexed) {
+            // bring the loaded table up to the latest schema, V1 is already recorded so only the index migrations run
+            new VersionedSchemaPopulator(new PathMatchingResourcePatternResolver().getResources(Config.MIGRATIONS_LOCATION))
+                    .populate(connection)
+                    .block();
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        Mono.from(connection.close()).block();
+    }
+
+    @Benchmark
+    public List<Integer> findByUpc() {
+        String upc = BenchmarkData.upc(ThreadLocalRandom.current().nextInt(1, rows + 1));
+
+        return Flux.from(connection.createStatement("SELECT id FROM beer WHERE upc = $1")
+                .bind(0, upc)
+                .execute())
+                .flatMap(result -> result.map((row, rowMetadata) -> row.get(0, Integer.class)))
+                .collectList()
+                .block();
+    }
+
+    @Benchmark
+    public List<Integer> findByStyleAndName() {
+        int x = ThreadLocalRandom.current().nextInt(1, rows + 1);
+
+        return Flux.from(connection.createStatement("SELECT id FROM beer WHERE beer_style = $1 AND beer_name = $2")
+                .bind(0, BenchmarkData.STYLES[x % 10])
+                .bind(1, BenchmarkData.beerName(x))
+                .execute())
+                .flatMap(result -> result.map((row, rowMetadata) -> row.get(0, Integer.class)))
+                .collectList()
+                .block();
+    }
+}
@@ -0,0 +1,131 @@
+package guru.springframework.sfgrestbrewery.benchmark;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import guru.springframework.sfgrestbrewery.domain.Beer;
+import guru.springframework.sfgrestbrewery.web.mappers.BeerMapper;
+import guru.springframework.sfgrestbrewery.web.mappers.BeerMapperImpl;
+import guru.springframework.sfgrestbrewery.web.mappers.DateMapper;
+import guru.springframework.sfgrestbrewery.web.model.BeerDto;
+import guru.springframework.sfgrestbrewery.web.model.BeerPagedList;
+import guru.springframework.sfgrestbrewery.web.model.BeerStyleEnum;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-request CPU work outside the database: entity to dto mapping, date conversions and
+ * writing a page of beers as JSON.
+ *
+ * Run with -Djmh.args="BeerMappingBenchmark -prof gc" for allocations per call (gc.alloc.rate.norm),
+ * the legacy benchmarks keep the DateMapper conversions as they were for comparison.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Dlogback.configurationFile=logback-benchmark.xml")
+public class BeerMappingBenchmark {
+
+    @Param({"25"})
+    int pageSize;
+
+    BeerMapper beerMapper;
+    DateMapper dateMapper;
+    ObjectMapper objectMapper;
+
+    Beer beer;
+    Timestamp timestamp;
+    OffsetDateTime offsetDateTime;
+    BeerPagedList beerPagedList;
+
+    @Setup
+    public void setUp() {
+        beerMapper = new BeerMapperImpl();
+        dateMapper = new DateMapper();
+
+        // same defaults as the ObjectMapper Spring Boot hands to WebFlux
+        objectMapper = Jackson2ObjectMapperBuilder.json().build();
+
+        beer = beer(1);
+        timestamp = Timestamp.valueOf(LocalDateTime.now());
+        offsetDateTime = OffsetDateTime.now(ZoneOffset.ofHours(2));
+
+        List<BeerDto> page = new ArrayList<>(pageSize);
+        for (int i = 1; i <= pageSize; i++) {
+            page.add(beerMapper.beerToBeerDto(beer(i)));
+        }
+        beerPagedList = new BeerPagedList(page, PageRequest.of(0, pageSize), 1000);
+    }
+
+    @Benchmark
+    public BeerDto beerToBeerDto() {
+        return beerMapper.beerToBeerDto(beer);
+    }
+
+    @Benchmark
+    public BeerDto beerToBeerDtoWithInventory() {
+        return beerMapper.beerToBeerDtoWithInventory(beer);
+    }
+
+    @Benchmark
+    public OffsetDateTime asOffsetDateTime() {
+        return dateMapper.asOffsetDateTime(timestamp);
+    }
+
+    @Benchmark
+    public Timestamp asTimestamp() {
+        return dateMapper.asTimestamp(offsetDateTime);
+    }
+
+    @Benchmark
+    public OffsetDateTime asOffsetDateTimeLegacy() {
+        return OffsetDateTime.of(timestamp.toLocalDateTime().getYear(), timestamp.toLocalDateTime().getMonthValue(),
+                timestamp.toLocalDateTime().getDayOfMonth(), timestamp.toLocalDateTime().getHour(), timestamp.toLocalDateTime().getMinute(),
+                timestamp.toLocalDateTime().getSecond(), timestamp.toLocalDateTime().getNano(), ZoneOffset.UTC);
+    }
+
+    @Benchmark
+    public Timestamp asTimestampLegacy() {
+        return Timestamp.valueOf(offsetDateTime.atZoneSameInstant(ZoneOffset.UTC).toLocalDateTime());
+    }
+
+    @Benchmark
+    public byte[] writeBeerPagedList() throws JsonProcessingException {
+        return objectMapper.writeValueAsBytes(beerPagedList);
+    }
+
+    private static Beer beer(int x) {
+        return Beer.builder()
+                .id(x)
+                .version(0L)
+                .beerName(BenchmarkData.beerName(x))
+                .beerStyle(BeerStyleEnum.valueOf(BenchmarkData.STYLES[x % 10]))
+                .upc(BenchmarkData.upc(x))
+                .quantityOnHand(x % 5000)
+                .price(new BigDecimal("12.95"))
+                .createdDate(LocalDateTime.now())
+                .lastModifiedDate(LocalDateTime.now())
+                .build();
+    }
+}
@@ -0,0 +1,89 @@
+package guru.springframework.sfgrestbrewery.benchmark;
+
+import guru.springframework.sfgrestbrewery.SfgReactiveBreweryApplication;
+import guru.springframework.sfgrestbrewery.services.BeerService;
+import guru.springframework.sfgrestbrewery.web.model.BeerDto;
+import guru.springframework.sfgrestbrewery.web.model.BeerPagedList;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.r2dbc.core.DatabaseClient;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * BeerServiceImpl reads against the in-memory H2 database seeded with {@code rows} generated beers.
+ *
+ * showInventoryOnHand=false goes through the beer caches, true always reads the database.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+public class BeerServiceBenchmark {
+
+    private static final int PAGE_SIZE = 25;
+
+    @Param({"1000", "100000"})
+    int rows;
+
+    @Param({"false", "true"})
+    boolean showInventoryOnHand;
+
+    ConfigurableApplicationContext context;
+
+    BeerService beerService;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        context = new SpringApplicationBuilder(SfgReactiveBreweryApplication.class)
+                .web(WebApplicationType.NONE)
+                .properties("logging.config=classpath:logback-benchmark.xml",
+                        "logging.level.guru.springframework.sfgrestbrewery=warn",
+                        "logging.level.org.springframework.web=warn",
+                        "logging.level.reactor.netty.http=warn")
+                .run();
+
+        context.getBean(DatabaseClient.class)
+                .sql(BenchmarkData.insertBeers(rows))
+                .fetch()
+                .rowsUpdated()
+                .block();
+
+        beerService = context.getBean(BeerService.class);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public BeerDto getById() {
+        return beerService.getById(ThreadLocalRandom.current().nextInt(1, rows + 1), showInventoryOnHand).block();
+    }
+
+    @Benchmark
+    public BeerPagedList listBeers() {
+        PageRequest pageRequest = PageRequest.of(ThreadLocalRandom.current().nextInt(rows / PAGE_SIZE), PAGE_SIZE);
+
+        return beerService.listBeers(null, null, pageRequest, showInventoryOnHand).block();
+    }
+}
@@ -0,0 +1,43 @@
+package guru.springframework.sfgrestbrewery.benchmark;
+
+/**
+ * Generated beer catalogue shared by the benchmarks.
+ */
+final class BenchmarkData {
+
+    static final String[] STYLES = {"LAGER", "PILSNER", "STOUT", "GOSE", "PORTER", "ALE", "WHEAT", "IPA", "PALE_ALE", "SAISON"};
+
+    static final int DISTINCT_NAMES = 50_000;
+
+    private BenchmarkData() {
+    }
+
+    /**
+     * Row X gets upc X left padded to 13 digits, style STYLES[X % 10] and name "Beer " + X % DISTINCT_NAMES.
+     * Generated inside H2, inserting this many rows through the driver would dominate setup time.
+     */
+    static String insertBeers(int rows) {
+        return "INSERT INTO beer (beer_name, beer_style, upc, version, quantity_on_hand, price) " +
+                "SELECT 'Beer ' || MOD(X, " + DISTINCT_NAMES + "), " +
+                "CASE MOD(X, 10) " + styleCases() + " END, " +
+                "LPAD(X, 13, '0'), 0, MOD(X, 5000), MOD(X, 10000) / 100.0 " +
+                "FROM SYSTEM_RANGE(1, " + rows + ")";
+    }
+
+    static String upc(int x) {
+        return String.format("%013d", x);
+    }
+
+    static String beerName(int x) {
+        return "Beer " + (x % DISTINCT_NAMES);
+    }
+
+    private static String styleCases() {
+        StringBuilder cases = new StringBuilder();
+
+        for (int i = 0; i < STYLES.length; i++) {
+            cases.append("WHEN ").append(i).append(" THEN '").append(STYLES[i]).append("' ");
+        }
+        return cases.toString();
+    }
+}
@@ -0,0 +1,113 @@
+package guru.springframework.sfgrestbrewery.benchmark;
+
+import guru.springframework.sfgrestbrewery.config.UuidBinaryConverters;
+import io.r2dbc.spi.Connection;
+import io.r2dbc.spi.ConnectionFactories;
+import io.r2dbc.spi.ConnectionFactory;
+import io.r2dbc.spi.Result;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.util.FileSystemUtils;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Customer lookups by id with ids stored as binary(16), as the customer table does, against the
+ * 36 character varchar form. Lookups include converting the UUID to the column's form.
+ *
+ * Runs on a file database, so the setup can print the space the table and its primary key index take.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx3g", "-Dlogback.configurationFile=logback-benchmark.xml"})
+public class CustomerIdBenchmark {
+
+    private static final int SAMPLE_SIZE = 10_000;
+
+    @Param({"1000000"})
+    int rows;
+
+    @Param({"binary", "varchar"})
+    String idType;
+
+    Path directory;
+    Connection connection;
+
+    // ids known to exist, as UUIDs like the service would hold them
+    List<UUID> sample;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("customer-ids");
+
+        ConnectionFactory connectionFactory = ConnectionFactories.get("r2dbc:h2:file:///" + directory.resolve("customers"));
+        connection = Mono.from(connectionFactory.create()).block();
+
+        boolean binary = "binary".equals(idType);
+        String idColumn = binary ? "binary(16)" : "varchar(36)";
+
+        execute("CREATE TABLE customer (id " + idColumn + " NOT NULL PRIMARY KEY, name varchar(100) NOT NULL, version integer)");
+        execute("INSERT INTO customer SELECT CAST(RANDOM_UUID() AS " + idColumn + "), 'Customer ' || X, 0 " +
+                "FROM SYSTEM_RANGE(1, " + rows + ")");
+
+        sample = Flux.from(connection.createStatement("SELECT id FROM customer WHERE MOD(_ROWID_, " +
+                        Math.max(rows / SAMPLE_SIZE, 1) + ") = 0").execute())
+                .flatMap(result -> result.map((row, rowMetadata) -> binary
+                        ? UuidBinaryConverters.BytesToUuidConverter.INSTANCE.convert(row.get(0, byte[].class))
+                        : UUID.fromString(row.get(0, String.class))))
+                .collectList()
+                .block();
+
+        Long bytes = Flux.from(connection.createStatement("CALL DISK_SPACE_USED('CUSTOMER')").execute())
+                .flatMap(result -> result.map((row, rowMetadata) -> row.get(0, Long.class)))
+                .blockLast();
+
+        System.out.printf("%n%s ids, %d rows: table and primary key index use %d KB%n", idType, rows, bytes / 1024);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        Mono.from(connection.close()).block();
+        FileSystemUtils.deleteRecursively(directory);
+    }
+
+    @Benchmark
+    public String findById() {
+        UUID id = sample.get(ThreadLocalRandom.current().nextInt(sample.size()));
+        Object boundId = "binary".equals(idType) ? UuidBinaryConverters.UuidToBytesConverter.INSTANCE.convert(id) : id.toString();
+
+        return Flux.from(connection.createStatement("SELECT name FROM customer WHERE id = $1")
+                .bind(0, boundId)
+                .execute())
+                .flatMap(result -> result.map((row, rowMetadata) -> row.get(0, String.class)))
+                .blockLast();
+    }
+
+    private void execute(String sql) {
+        Flux.from(connection.createStatement(sql).execute())
+                .flatMap(Result::getRowsUpdated)
+                .blockLast();
+    }
+}
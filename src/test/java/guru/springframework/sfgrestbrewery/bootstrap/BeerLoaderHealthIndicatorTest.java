@@ -0,0 +1,90 @@
+package guru.springframework.sfgrestbrewery.bootstrap;
+
+import guru.springframework.sfgrestbrewery.config.SchemaInitializer;
+import guru.springframework.sfgrestbrewery.repositories.BeerRepository;
+import guru.springframework.sfgrestbrewery.services.BeerSearchIndex;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.Status;
+import org.springframework.cache.concurrent.ConcurrentMapCacheManager;
+import org.springframework.r2dbc.connection.init.UncategorizedScriptException;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.BDDMockito.given;
+
+@ExtendWith(MockitoExtension.class)
+class BeerLoaderHealthIndicatorTest {
+
+    @Mock
+    BeerRepository beerRepository;
+
+    @Mock
+    SchemaInitializer schemaInitializer;
+
+    Sinks.Empty<Void> schemaMigrated = Sinks.empty();
+
+    BeerLoader beerLoader;
+
+    BeerLoaderHealthIndicator healthIndicator;
+
+    @BeforeEach
+    void setUp() {
+        given(schemaInitializer.initialized()).willReturn(schemaMigrated.asMono());
+
+        beerLoader = new BeerLoader(beerRepository, new ConcurrentMapCacheManager(), schemaInitializer,
+                new BeerSearchIndex(), 0, 1000, 4, 42);
+        healthIndicator = new BeerLoaderHealthIndicator(beerLoader);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    @DisplayName("Out of service until the schema is migrated and the beers are loaded, then up with the phase times")
+    void outOfServiceUntilLoaded() {
+        given(beerRepository.count()).willReturn(Mono.just(30L));
+        given(beerRepository.findAll()).willReturn(Flux.empty());
+        given(schemaInitializer.getMigrationTime()).willReturn(null, Duration.ofMillis(250));
+
+        assertThat(status()).isEqualTo(Status.OUT_OF_SERVICE);
+
+        beerLoader.run();
+        assertThat(status()).isEqualTo(Status.OUT_OF_SERVICE);
+
+        schemaMigrated.tryEmitEmpty();
+        StepVerifier.create(beerLoader.loaded()).expectNext(0L).expectComplete().verify(Duration.ofSeconds(5));
+
+        Health health = healthIndicator.health().block();
+        assertThat(health.getStatus()).isEqualTo(Status.UP);
+        assertThat((Map<String, Long>) health.getDetails().get("phases"))
+                .containsOnlyKeys(BeerLoader.SCHEMA_PHASE, BeerLoader.SEEDING_PHASE, BeerLoader.SEARCH_INDEX_PHASE)
+                .containsEntry(BeerLoader.SCHEMA_PHASE, 250L);
+    }
+
+    @Test
+    @DisplayName("Down with the cause when the schema migration fails")
+    void downWhenMigrationFails() {
+        beerLoader.run();
+
+        schemaMigrated.tryEmitError(new UncategorizedScriptException("Failed to execute migration V2"));
+        StepVerifier.create(beerLoader.loaded()).expectError(UncategorizedScriptException.class).verify(Duration.ofSeconds(5));
+
+        Health health = healthIndicator.health().block();
+        assertThat(health.getStatus()).isEqualTo(Status.DOWN);
+        assertThat(health.getDetails().get("error").toString()).startsWith(UncategorizedScriptException.class.getName());
+    }
+
+    private Status status() {
+        return healthIndicator.health().map(Health::getStatus).block();
+    }
+}
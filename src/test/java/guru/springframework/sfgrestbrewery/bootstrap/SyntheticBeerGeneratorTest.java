@@ -0,0 +1,39 @@
+package guru.springframework.sfgrestbrewery.bootstrap;
+
+import guru.springframework.sfgrestbrewery.domain.Beer;
+import guru.springframework.sfgrestbrewery.web.model.BeerStyleEnum;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.stream.LongStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class SyntheticBeerGeneratorTest {
+
+    @Test
+    @DisplayName("Beer n is the same for the same seed")
+    void reproducible() {
+        Beer first = new SyntheticBeerGenerator(42).beer(1234);
+        Beer second = new SyntheticBeerGenerator(42).beer(1234);
+
+        assertThat(second).usingRecursiveComparison().isEqualTo(first);
+        assertThat(first.getUpc()).isEqualTo("2000000001234");
+    }
+
+    @Test
+    @DisplayName("Styles follow the weighted mix")
+    void styleMix() {
+        SyntheticBeerGenerator generator = new SyntheticBeerGenerator(7);
+        Map<BeerStyleEnum, Long> styles = new EnumMap<>(BeerStyleEnum.class);
+
+        LongStream.range(0, 10_000).mapToObj(generator::beer)
+                .forEach(beer -> styles.merge(beer.getBeerStyle(), 1L, Long::sum));
+
+        assertThat(styles).hasSize(BeerStyleEnum.values().length);
+        assertThat(styles.get(BeerStyleEnum.IPA)).isGreaterThan(styles.get(BeerStyleEnum.LAGER));
+        assertThat(styles.get(BeerStyleEnum.GOSE)).isLessThan(styles.get(BeerStyleEnum.SAISON));
+    }
+}
@@ -0,0 +1,124 @@
+package guru.springframework.sfgrestbrewery.config;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.r2dbc.pool.ConnectionPoolConfiguration;
+import io.r2dbc.spi.Connection;
+import io.r2dbc.spi.ConnectionFactories;
+import io.r2dbc.spi.ConnectionFactory;
+import io.r2dbc.spi.R2dbcNonTransientResourceException;
+import io.r2dbc.spi.R2dbcTimeoutException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.autoconfigure.AutoConfigurations;
+import org.springframework.boot.autoconfigure.data.r2dbc.R2dbcDataAutoConfiguration;
+import org.springframework.boot.autoconfigure.r2dbc.R2dbcAutoConfiguration;
+import org.springframework.boot.test.context.runner.ApplicationContextRunner;
+import org.springframework.boot.convert.ApplicationConversionService;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.mock;
+
+class MeteredConnectionPoolTest {
+
+    MeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    MeteredConnectionPool pool;
+
+    @AfterEach
+    void tearDown() {
+        if (pool != null) {
+            pool.dispose();
+        }
+    }
+
+    @Test
+    @DisplayName("The pool is sized from sfg.brewery.r2dbc.pool and disposed with the context")
+    void poolWiring() {
+        AtomicReference<MeteredConnectionPool> connectionFactory = new AtomicReference<>();
+
+        // as SpringApplication does, so durations such as 5s bind
+        new ApplicationContextRunner()
+                .withInitializer(context -> context.getBeanFactory().setConversionService(ApplicationConversionService.getSharedInstance()))
+                .withConfiguration(AutoConfigurations.of(R2dbcAutoConfiguration.class, R2dbcDataAutoConfiguration.class))
+                .withUserConfiguration(Config.class)
+                .withPropertyValues("spring.r2dbc.url=r2dbc:h2:mem:///poolwiring",
+                        "sfg.brewery.r2dbc.pool.initial-size=2", "sfg.brewery.r2dbc.pool.max-size=3")
+                .run(context -> {
+                    assertThat(context).hasSingleBean(ConnectionFactory.class);
+                    connectionFactory.set(context.getBean(MeteredConnectionPool.class));
+
+                    assertThat(connectionFactory.get().getMetrics()).hasValueSatisfying(metrics ->
+                            assertThat(metrics.getMaxAllocatedSize()).isEqualTo(3));
+                    assertThat(connectionFactory.get().isDisposed()).isFalse();
+                });
+
+        assertThat(connectionFactory.get().isDisposed()).isTrue();
+    }
+
+    @Test
+    @DisplayName("Connections handed out are timed as successes")
+    void acquireTimedOnSuccess() {
+        pool = pool(ConnectionFactories.get("r2dbc:h2:mem:///acquiresuccess"), Duration.ofSeconds(5));
+
+        StepVerifier.create(Mono.usingWhen(pool.create(), connection -> Mono.just(true), Connection::close))
+                .expectNext(true)
+                .verifyComplete();
+
+        assertThat(acquireCount("success")).isEqualTo(1);
+        assertThat(acquireCount("timeout")).isZero();
+    }
+
+    @Test
+    @DisplayName("Waits ending in max-acquire-time are timed as timeouts")
+    void acquireTimedOnTimeout() {
+        pool = pool(ConnectionFactories.get("r2dbc:h2:mem:///acquiretimeout"), Duration.ofMillis(100));
+
+        Connection held = pool.create().block();
+
+        StepVerifier.create(pool.create())
+                .expectError(R2dbcTimeoutException.class)
+                .verify(Duration.ofSeconds(5));
+
+        assertThat(acquireCount("success")).isEqualTo(1);
+        assertThat(acquireCount("timeout")).isEqualTo(1);
+
+        Mono.from(held.close()).block();
+    }
+
+    @Test
+    @DisplayName("Connections the database refuses are timed as errors")
+    void acquireTimedOnError() {
+        ConnectionFactory unavailable = mock(ConnectionFactory.class);
+        given(unavailable.create()).willAnswer(invocation -> Mono.error(new R2dbcNonTransientResourceException("unavailable")));
+        pool = pool(unavailable, Duration.ofSeconds(5));
+
+        StepVerifier.create(pool.create())
+                .expectError()
+                .verify(Duration.ofSeconds(5));
+
+        assertThat(acquireCount("error")).isEqualTo(1);
+        assertThat(acquireCount("success")).isZero();
+    }
+
+    private MeteredConnectionPool pool(ConnectionFactory connectionFactory, Duration maxAcquireTime) {
+        MeteredConnectionPool meteredPool = new MeteredConnectionPool(ConnectionPoolConfiguration.builder(connectionFactory)
+                .initialSize(0)
+                .maxSize(1)
+                .maxAcquireTime(maxAcquireTime)
+                .build(), "test");
+        meteredPool.bindTo(meterRegistry);
+        return meteredPool;
+    }
+
+    private long acquireCount(String outcome) {
+        return meterRegistry.get("r2dbc.pool.acquire").tag("outcome", outcome).timer().count();
+    }
+}
@@ -0,0 +1,22 @@
+package guru.springframework.sfgrestbrewery.config;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class UuidBinaryConvertersTest {
+
+    @Test
+    @DisplayName("UUIDs round trip through 16 bytes, most significant bits first")
+    void roundTrip() {
+        UUID uuid = UUID.fromString("00112233-4455-6677-8899-aabbccddeeff");
+
+        byte[] bytes = UuidBinaryConverters.UuidToBytesConverter.INSTANCE.convert(uuid);
+
+        assertThat(bytes).hasSize(16).startsWith(0x00, 0x11, 0x22).endsWith(0xdd, 0xee, 0xff);
+        assertThat(UuidBinaryConverters.BytesToUuidConverter.INSTANCE.convert(bytes)).isEqualTo(uuid);
+    }
+}
@@ -0,0 +1,221 @@
+package guru.springframework.sfgrestbrewery.functional;
+
+import guru.springframework.sfgrestbrewery.services.BeerChangeStream;
+import guru.springframework.sfgrestbrewery.services.BeerService;
+import guru.springframework.sfgrestbrewery.services.InventoryService;
+import guru.springframework.sfgrestbrewery.web.model.BeerBatchResult;
+import guru.springframework.sfgrestbrewery.web.model.BeerDto;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.reactive.WebFluxTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Import;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.reactive.server.WebTestClient;
+import reactor.core.publisher.Flux;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+import static guru.springframework.sfgrestbrewery.functional.BeerRouterConfig.BEER_BATCH_PATH_V2;
+import static guru.springframework.sfgrestbrewery.functional.BeerRouterConfig.BEER_STREAM_PATH_V2;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+@WebFluxTest(BeerHandlerV2.class)
+@Import({BeerRouterConfig.class, BeerHandlerV2.class, BeerChangesWebSocketHandler.class})
+class BeerHandlerV2Test {
+
+    static final int CATALOGUE_SIZE = 10_000;
+
+    @Autowired
+    WebTestClient webTestClient;
+
+    @MockBean
+    BeerService beerService;
+
+    @MockBean
+    InventoryService inventoryService;
+
+    @MockBean
+    BeerChangeStream changeStream;
+
+    @Test
+    @DisplayName("The stream is newline delimited JSON, one beer a line")
+    void streamBeersAsNdjson() {
+        given(beerService.streamBeers(any(), any(), anyBoolean())).willReturn(catalogue(3));
+
+        String body = webTestClient.get()
+                .uri("/" + BEER_STREAM_PATH_V2)
+                .accept(MediaType.APPLICATION_NDJSON)
+                .exchange()
+                .expectStatus().isOk()
+                .expectHeader().contentTypeCompatibleWith(MediaType.APPLICATION_NDJSON)
+                .expectBody(String.class)
+                .returnResult()
+                .getResponseBody();
+
+        List<String> lines = Arrays.asList(body.split("\n"));
+        assertThat(lines).hasSize(3);
+        assertThat(lines.get(0)).startsWith("{").endsWith("}").contains("\"id\":1");
+        assertThat(lines.get(2)).contains("\"id\":3");
+    }
+
+    @Test
+    @DisplayName("A client asking for server sent events gets one data event a beer")
+    void streamBeersAsServerSentEvents() {
+        given(beerService.streamBeers(any(), any(), anyBoolean())).willReturn(catalogue(3));
+
+        String body = webTestClient.get()
+                .uri("/" + BEER_STREAM_PATH_V2)
+                .accept(MediaType.TEXT_EVENT_STREAM)
+                .exchange()
+                .expectStatus().isOk()
+                .expectHeader().contentTypeCompatibleWith(MediaType.TEXT_EVENT_STREAM)
+                .expectBody(String.class)
+                .returnResult()
+                .getResponseBody();
+
+        List<String> events = Arrays.stream(body.split("\n\n"))
+                .filter(event -> !event.trim().isEmpty())
+                .collect(Collectors.toList());
+        assertThat(events).hasSize(3);
+        assertThat(events).allSatisfy(event -> assertThat(event).startsWith("data:{"));
+        assertThat(events.get(1)).contains("\"id\":2");
+    }
+
+    @Test
+    @DisplayName("The whole catalogue is streamed")
+    void streamBeersStreamsWholeCatalogue() {
+        given(beerService.streamBeers(any(), any(), anyBoolean())).willReturn(catalogue(CATALOGUE_SIZE));
+
+        StepVerifier.create(webTestClient.get()
+                        .uri("/" + BEER_STREAM_PATH_V2)
+                        .accept(MediaType.APPLICATION_NDJSON)
+                        .exchange()
+                        .expectStatus().isOk()
+                        .returnResult(BeerDto.class)
+                        .getResponseBody()
+                        .map(BeerDto::getId))
+                .expectNextCount(CATALOGUE_SIZE - 1)
+                .expectNext(CATALOGUE_SIZE)
+                .verifyComplete();
+    }
+
+    @Test
+    @DisplayName("Beers are written as they are read rather than once the query completes")
+    void streamBeersIsNotBuffered() {
+        // a query that never completes, a buffered response would never be written
+        given(beerService.streamBeers(any(), any(), anyBoolean())).willReturn(catalogue(100).concatWith(Flux.never()));
+
+        StepVerifier.create(webTestClient.get()
+                        .uri("/" + BEER_STREAM_PATH_V2)
+                        .accept(MediaType.APPLICATION_NDJSON)
+                        .exchange()
+                        .expectStatus().isOk()
+                        .returnResult(BeerDto.class)
+                        .getResponseBody()
+                        .map(BeerDto::getId))
+                .expectNext(1)
+                .expectNextCount(99)
+                .thenCancel()
+                .verify(Duration.ofSeconds(10));
+    }
+
+    @Test
+    @DisplayName("A batch reports invalid items and creates the valid ones")
+    void saveBeerBatchWithInvalidItems() {
+        given(beerService.saveBeers(any())).willReturn(Flux.just(saved(7), saved(8)));
+
+        List<BeerBatchResult> results = postBatch(newBeer("Beer 1"), newBeer(null), newBeer("Beer 3"));
+
+        assertThat(results).extracting(BeerBatchResult::getIndex).containsExactly(0L, 1L, 2L);
+        assertThat(results).extracting(BeerBatchResult::getStatus).containsExactly(
+                BeerBatchResult.Status.CREATED, BeerBatchResult.Status.INVALID, BeerBatchResult.Status.CREATED);
+        assertThat(results).extracting(BeerBatchResult::getId).containsExactly(7, null, 8);
+    }
+
+    @Test
+    @DisplayName("A batch that fails is written again in parts, each item reporting its own outcome without the cause")
+    void saveBeerBatchWithFailingItems() {
+        AtomicInteger ids = new AtomicInteger();
+        given(beerService.saveBeers(any())).willAnswer(invocation -> {
+            List<BeerDto> beers = invocation.getArgument(0);
+
+            if (beers.stream().anyMatch(beer -> beer.getBeerName().equals("Duplicate"))) {
+                return Flux.error(new DataIntegrityViolationException("insert into beer (upc) values ('0631234200036')"));
+            }
+            if (beers.stream().anyMatch(beer -> beer.getBeerName().equals("Broken"))) {
+                return Flux.error(new IllegalStateException("connection reset"));
+            }
+            return Flux.fromIterable(beers).map(beer -> saved(ids.incrementAndGet()));
+        });
+
+        List<BeerBatchResult> results = postBatch(newBeer("Beer 1"), newBeer(null), newBeer("Duplicate"),
+                newBeer("Beer 4"), newBeer("Beer 5"), newBeer("Broken"));
+
+        assertThat(results).extracting(BeerBatchResult::getIndex).containsExactly(0L, 1L, 2L, 3L, 4L, 5L);
+        assertThat(results).extracting(BeerBatchResult::getStatus).containsExactly(
+                BeerBatchResult.Status.CREATED, BeerBatchResult.Status.INVALID, BeerBatchResult.Status.FAILED,
+                BeerBatchResult.Status.CREATED, BeerBatchResult.Status.CREATED, BeerBatchResult.Status.FAILED);
+        assertThat(results.get(0).getId()).isNotNull();
+        assertThat(results.get(2).getId()).isNull();
+        assertThat(results.get(2).getErrors()).containsExactly(BeerHandlerV2.CONFLICT);
+        assertThat(results.get(5).getErrors()).containsExactly(BeerHandlerV2.SAVE_FAILED);
+    }
+
+    @Test
+    @DisplayName("A batch with no valid items writes nothing")
+    void saveBeerBatchWithNoValidItems() {
+        List<BeerBatchResult> results = postBatch(newBeer(null), newBeer(""));
+
+        assertThat(results).extracting(BeerBatchResult::getStatus).containsOnly(BeerBatchResult.Status.INVALID);
+        verify(beerService, never()).saveBeers(any());
+    }
+
+    private List<BeerBatchResult> postBatch(BeerDto... beers) {
+        return webTestClient.post()
+                .uri("/" + BEER_BATCH_PATH_V2)
+                .contentType(MediaType.APPLICATION_NDJSON)
+                .body(Flux.just(beers), BeerDto.class)
+                .exchange()
+                .expectStatus().isOk()
+                .expectBodyList(BeerBatchResult.class)
+                .returnResult()
+                .getResponseBody();
+    }
+
+    private BeerDto newBeer(String beerName) {
+        return BeerDto.builder()
+                .beerName(beerName)
+                .beerStyle("PALE_ALE")
+                .build();
+    }
+
+    private BeerDto saved(Integer id) {
+        return BeerDto.builder()
+                .id(id)
+                .beerName("Beer " + id)
+                .beerStyle("PALE_ALE")
+                .build();
+    }
+
+    private Flux<BeerDto> catalogue(int size) {
+        return Flux.range(1, size)
+                .map(id -> BeerDto.builder()
+                        .id(id)
+                        .beerName("Beer " + id)
+                        .beerStyle("PALE_ALE")
+                        .build());
+    }
+}
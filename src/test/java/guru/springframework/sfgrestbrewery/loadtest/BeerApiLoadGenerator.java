@@ -0,0 +1,226 @@
+package guru.springframework.sfgrestbrewery.loadtest;
+
+import guru.springframework.sfgrestbrewery.bootstrap.BeerLoader;
+import guru.springframework.sfgrestbrewery.web.model.BeerDto;
+import guru.springframework.sfgrestbrewery.web.model.InventoryAdjustment;
+import org.springframework.http.MediaType;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+
+import java.lang.reflect.Field;
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * Closed loop load generator for the v1 (BeerController) and v2 (BeerHandlerV2) beer apis.
+ *
+ * Each of {@code concurrency} workers issues requests back to back, picking the operation from
+ * the weighted mix with its own seeded Random, so runs with the same options send the same
+ * request sequence. The apis are driven one after the other with identical load, each with a
+ * warmup that is not reported. Start the application first, then run
+ *
+ *   mvn -Ploadtest verify -Dloadtest.args="concurrency=64 duration=60s"
+ *
+ * Options (key=value): baseUrl, apis, concurrency, warmup, duration, mix, seed, hotBeerId.
+ *
+ * The reserve and release operations (v2 only) all go to beer hotBeerId, to load a single popular beer:
+ *
+ *   mvn -Ploadtest verify -Dloadtest.args="apis=v2 mix=reserve:50,release:50"
+ */
+public class BeerApiLoadGenerator {
+
+    private static final List<String> UPCS = seededUpcs();
+
+    private final WebClient webClient;
+    private final Map<String, String> options;
+    private final int concurrency;
+    private final long seed;
+    private final Map<String, Integer> mix;
+
+    // created beers need a unique upc, start somewhere a previous run is unlikely to have reached
+    private final AtomicLong nextUpc = new AtomicLong(9_000_000_000_000L + System.currentTimeMillis() % 100_000_000_000L);
+
+    BeerApiLoadGenerator(Map<String, String> options) {
+        this.options = options;
+        this.concurrency = Integer.parseInt(options.get("concurrency"));
+        this.seed = Long.parseLong(options.get("seed"));
+        this.mix = parseMix(options.get("mix"));
+
+        ConnectionProvider connectionProvider = ConnectionProvider.builder("loadtest")
+                .maxConnections(concurrency)
+                .pendingAcquireMaxCount(-1)
+                .build();
+
+        this.webClient = WebClient.builder()
+                .baseUrl(options.get("baseUrl"))
+                .clientConnector(new ReactorClientHttpConnector(HttpClient.create(connectionProvider)))
+                .build();
+    }
+
+    public static void main(String[] args) {
+        Map<String, String> options = new LinkedHashMap<>();
+        options.put("baseUrl", "http://localhost:8080");
+        options.put("apis", "v1,v2");
+        options.put("concurrency", "32");
+        options.put("warmup", "10s");
+        options.put("duration", "30s");
+        options.put("mix", "getById:70,getByUpc:25,create:5");
+        options.put("seed", "42");
+        options.put("hotBeerId", "1");
+
+        for (String arg : args) {
+            String[] keyValue = arg.split("=", 2);
+
+            if (keyValue.length != 2 || !options.containsKey(keyValue[0])) {
+                throw new IllegalArgumentException("Unknown option " + arg + ", expected one of " + options.keySet());
+            }
+            options.put(keyValue[0], keyValue[1]);
+        }
+
+        System.out.println("Load test " + options);
+        new BeerApiLoadGenerator(options).run();
+    }
+
+    void run() {
+        List<OperationStats> report = new ArrayList<>();
+        Duration warmup = duration(options.get("warmup"));
+        Duration duration = duration(options.get("duration"));
+
+        for (String api : options.get("apis").split(",")) {
+            Map<String, OperationStats> stats = new LinkedHashMap<>();
+            mix.keySet().forEach(operation -> stats.put(operation, new OperationStats(api, operation)));
+
+            drive(api, stats, warmup);
+            stats.values().forEach(OperationStats::reset);
+
+            drive(api, stats, duration);
+            report.addAll(stats.values());
+        }
+
+        System.out.println();
+        System.out.println(OperationStats.header());
+        report.forEach(operationStats -> System.out.println(operationStats.format(duration)));
+    }
+
+    private void drive(String api, Map<String, OperationStats> stats, Duration duration) {
+        long deadline = System.nanoTime() + duration.toNanos();
+
+        Flux.range(0, concurrency)
+                .flatMap(worker -> {
+                    Random random = new Random(seed + worker);
+
+                    return Mono.defer(() -> {
+                        String operation = pickOperation(random);
+                        return call(api, operation, random, stats.get(operation));
+                    }).repeat(() -> System.nanoTime() < deadline);
+                }, concurrency)
+                .blockLast();
+    }
+
+    private Mono<Void> call(String api, String operation, Random random, OperationStats stats) {
+        String path = "/api/" + api;
+        Function<WebClient, WebClient.RequestHeadersSpec<?>> request;
+
+        switch (operation) {
+            case "getById":
+                int beerId = random.nextInt(UPCS.size()) + 1;
+                request = client -> client.get().uri(path + "/beer/{beerId}", beerId).accept(MediaType.APPLICATION_JSON);
+                break;
+            case "getByUpc":
+                String upc = UPCS.get(random.nextInt(UPCS.size()));
+                request = client -> client.get().uri(path + "/beerUpc/{upc}", upc).accept(MediaType.APPLICATION_JSON);
+                break;
+            case "create":
+                BeerDto beerDto = BeerDto.builder()
+                        .beerName("Load Test " + random.nextInt(1000))
+                        .beerStyle("LAGER")
+                        .upc(String.valueOf(nextUpc.getAndIncrement()))
+                        .price(new BigDecimal("9.99"))
+                        .build();
+                request = client -> client.post().uri(path + "/beer").accept(MediaType.APPLICATION_JSON).bodyValue(beerDto);
+                break;
+            case "reserve":
+            case "release":
+                InventoryAdjustment adjustment = InventoryAdjustment.builder().quantity(1).build();
+                request = client -> client.post().uri(path + "/beer/{beerId}/inventory/" + operation, options.get("hotBeerId"))
+                        .accept(MediaType.APPLICATION_JSON).bodyValue(adjustment);
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown operation " + operation);
+        }
+
+        return Mono.defer(() -> {
+            long start = System.nanoTime();
+
+            return request.apply(webClient)
+                    .retrieve()
+                    .toBodilessEntity()
+                    .doOnSuccess(response -> stats.recordSuccess(start));
+        })
+                .onErrorResume(e -> {
+                    stats.recordError(e);
+                    return Mono.empty();
+                })
+                .then();
+    }
+
+    private String pickOperation(Random random) {
+        int total = mix.values().stream().mapToInt(Integer::intValue).sum();
+        int pick = random.nextInt(total);
+
+        for (Map.Entry<String, Integer> entry : mix.entrySet()) {
+            pick -= entry.getValue();
+            if (pick < 0) {
+                return entry.getKey();
+            }
+        }
+        throw new IllegalStateException("Empty request mix");
+    }
+
+    private static Map<String, Integer> parseMix(String mix) {
+        Map<String, Integer> weights = new LinkedHashMap<>();
+
+        for (String entry : mix.split(",")) {
+            String[] operationWeight = entry.split(":");
+            weights.put(operationWeight[0], Integer.parseInt(operationWeight[1]));
+        }
+        return weights;
+    }
+
+    private static Duration duration(String value) {
+        return Duration.parse("PT" + value.toUpperCase());
+    }
+
+    private static List<String> seededUpcs() {
+        List<String> upcs = new ArrayList<>();
+
+        // BEER_1_UPC..BEER_n_UPC belong to beer ids 1..n as loaded by BeerLoader
+        Arrays.stream(BeerLoader.class.getFields())
+                .filter(field -> field.getName().matches("BEER_\\d+_UPC"))
+                .sorted((a, b) -> Integer.compare(beerNumber(a), beerNumber(b)))
+                .forEach(field -> {
+                    try {
+                        upcs.add((String) field.get(null));
+                    } catch (IllegalAccessException e) {
+                        throw new IllegalStateException(e);
+                    }
+                });
+        return upcs;
+    }
+
+    private static int beerNumber(Field field) {
+        return Integer.parseInt(field.getName().replaceAll("\\D", ""));
+    }
+}
@@ -0,0 +1,68 @@
+package guru.springframework.sfgrestbrewery.loadtest;
+
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Latency histogram and error count for one operation against one api version.
+ */
+class OperationStats {
+
+    private static final long MAX_LATENCY_MICROS = TimeUnit.MINUTES.toMicros(1);
+
+    private final String api;
+    private final String operation;
+    private final Histogram latencies = new ConcurrentHistogram(MAX_LATENCY_MICROS, 3);
+    private final LongAdder errors = new LongAdder();
+    private final AtomicBoolean errorReported = new AtomicBoolean();
+
+    OperationStats(String api, String operation) {
+        this.api = api;
+        this.operation = operation;
+    }
+
+    void recordSuccess(long startNanos) {
+        latencies.recordValue(Math.min(MAX_LATENCY_MICROS, TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - startNanos)));
+    }
+
+    void recordError(Throwable error) {
+        errors.increment();
+
+        if (errorReported.compareAndSet(false, true)) {
+            System.err.println(api + " " + operation + " failed: " + error);
+        }
+    }
+
+    void reset() {
+        latencies.reset();
+        errors.reset();
+    }
+
+    long getRequests() {
+        return latencies.getTotalCount() + errors.sum();
+    }
+
+    static String header() {
+        return String.format("%-4s %-10s %10s %8s %10s %9s %9s %9s %9s",
+                "api", "operation", "requests", "errors", "req/s", "p50 ms", "p99 ms", "p999 ms", "max ms");
+    }
+
+    String format(Duration elapsed) {
+        return String.format("%-4s %-10s %10d %8d %10.1f %9.2f %9.2f %9.2f %9.2f",
+                api, operation, getRequests(), errors.sum(),
+                getRequests() * 1000.0 / elapsed.toMillis(),
+                millis(latencies.getValueAtPercentile(50)),
+                millis(latencies.getValueAtPercentile(99)),
+                millis(latencies.getValueAtPercentile(99.9)),
+                millis(latencies.getMaxValue()));
+    }
+
+    private static double millis(long micros) {
+        return micros / 1000.0;
+    }
+}
@@ -0,0 +1,64 @@
+package guru.springframework.sfgrestbrewery.repositories;
+
+import io.r2dbc.spi.ConnectionFactories;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.util.StreamUtils;
+import reactor.test.StepVerifier;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class BeerBatchRepositoryImplTest {
+
+    DatabaseClient databaseClient;
+
+    BeerBatchRepositoryImpl beerBatchRepository;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        databaseClient = DatabaseClient.create(ConnectionFactories.get("r2dbc:h2:mem:///adjustinventory;DB_CLOSE_DELAY=-1"));
+        beerBatchRepository = new BeerBatchRepositoryImpl(databaseClient);
+
+        String createBeer = StreamUtils.copyToString(new ClassPathResource("db/migration/V1__create_beer.sql").getInputStream(),
+                StandardCharsets.UTF_8);
+
+        databaseClient.sql("DROP TABLE IF EXISTS beer").then().block();
+        databaseClient.sql(createBeer).then().block();
+        databaseClient.sql("INSERT INTO beer (id, beer_name, quantity_on_hand) VALUES (1, 'Mango Bobs', 5), (2, 'Galaxy Cat', 2), (3, 'Pinball Porter', NULL)")
+                .then().block();
+    }
+
+    @Test
+    @DisplayName("Deltas are applied, one taking stock below zero or for a missing beer comes back unapplied")
+    void adjustInventoryGuardsAgainstNegativeStock() {
+        Map<Integer, Integer> deltas = new HashMap<>();
+        deltas.put(1, -5);
+        deltas.put(2, -3);
+        deltas.put(3, 4);
+        deltas.put(99, 1);
+
+        StepVerifier.create(beerBatchRepository.adjustInventory(deltas))
+                .assertNext(unapplied -> assertThat(unapplied).containsExactlyInAnyOrder(2, 99))
+                .verifyComplete();
+
+        assertThat(quantityOnHand(1)).isZero();
+        assertThat(quantityOnHand(2)).isEqualTo(2);
+        assertThat(quantityOnHand(3)).isEqualTo(4);
+    }
+
+    private Integer quantityOnHand(Integer beerId) {
+        return databaseClient.sql("SELECT quantity_on_hand FROM beer WHERE id = $1")
+                .bind(0, beerId)
+                .map(row -> row.get(0, Integer.class))
+                .one()
+                .block();
+    }
+}
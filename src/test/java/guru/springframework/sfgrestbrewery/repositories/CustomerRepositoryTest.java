@@ -0,0 +1,89 @@
+package guru.springframework.sfgrestbrewery.repositories;
+
+import guru.springframework.sfgrestbrewery.config.Config;
+import guru.springframework.sfgrestbrewery.domain.Customer;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.data.r2dbc.DataR2dbcTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.r2dbc.core.DatabaseClient;
+import reactor.test.StepVerifier;
+
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+// the schema comes from the migrations, so the id column is the binary(16) V4 leaves it as
+@DataR2dbcTest(properties = "spring.r2dbc.url=r2dbc:h2:mem:///customerrepository;DB_CLOSE_DELAY=-1")
+@Import(Config.class)
+class CustomerRepositoryTest {
+
+    @Autowired
+    CustomerRepository customerRepository;
+
+    @Autowired
+    DatabaseClient databaseClient;
+
+    @Test
+    @DisplayName("A customer saved with its id assigned up front is found by it, stored as 16 bytes")
+    void saveAndFind() {
+        UUID id = UUID.randomUUID();
+
+        StepVerifier.create(customerRepository.save(customer(id, "Jim Beam")))
+                .assertNext(saved -> assertThat(saved.getVersion()).isZero())
+                .verifyComplete();
+
+        StepVerifier.create(customerRepository.findById(id))
+                .assertNext(found -> {
+                    assertThat(found.getId()).isEqualTo(id);
+                    assertThat(found.getName()).isEqualTo("Jim Beam");
+                })
+                .verifyComplete();
+
+        StepVerifier.create(databaseClient.sql("SELECT LENGTH(id) FROM customer WHERE name = 'Jim Beam'")
+                        .map(row -> row.get(0, Long.class))
+                        .one())
+                .expectNext(16L)
+                .verifyComplete();
+    }
+
+    @Test
+    @DisplayName("A customer is renamed by id in one statement, an unknown id changes nothing")
+    void updateName() {
+        UUID id = UUID.randomUUID();
+        customerRepository.save(customer(id, "Jack Daniels")).block();
+
+        StepVerifier.create(customerRepository.updateName(id, "Johnnie Walker")).expectNext(1).verifyComplete();
+        StepVerifier.create(customerRepository.updateName(UUID.randomUUID(), "Johnnie Walker")).expectNext(0).verifyComplete();
+
+        StepVerifier.create(customerRepository.findById(id))
+                .assertNext(found -> {
+                    assertThat(found.getName()).isEqualTo("Johnnie Walker");
+                    assertThat(found.getVersion()).isEqualTo(1L);
+                })
+                .verifyComplete();
+    }
+
+    @Test
+    @DisplayName("A customer is deleted by id, an unknown id deletes nothing")
+    void deleteCustomer() {
+        UUID id = UUID.randomUUID();
+        UUID otherId = UUID.randomUUID();
+        customerRepository.save(customer(id, "Glen Moray")).block();
+        customerRepository.save(customer(otherId, "Glen Grant")).block();
+
+        StepVerifier.create(customerRepository.deleteCustomer(id)).expectNext(1).verifyComplete();
+        StepVerifier.create(customerRepository.deleteCustomer(id)).expectNext(0).verifyComplete();
+
+        StepVerifier.create(customerRepository.findById(id)).verifyComplete();
+        StepVerifier.create(customerRepository.findById(otherId)).expectNextCount(1).verifyComplete();
+    }
+
+    private static Customer customer(UUID id, String name) {
+        return Customer.builder()
+                .id(id)
+                .name(name)
+                .build();
+    }
+}
@@ -0,0 +1,176 @@
+package guru.springframework.sfgrestbrewery.services;
+
+import guru.springframework.sfgrestbrewery.web.model.BeerChange;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.reactivestreams.Subscription;
+import reactor.core.Disposable;
+import reactor.core.publisher.BaseSubscriber;
+import reactor.test.StepVerifier;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class BeerChangeStreamTest {
+
+    SimpleMeterRegistry meterRegistry;
+
+    BeerChangeStream changeStream;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        changeStream = new BeerChangeStream(meterRegistry, 2);
+    }
+
+    @Test
+    @DisplayName("Subscribers only see changes of the beers they asked for")
+    void filtersByBeer() {
+        StepVerifier.create(changeStream.changes(Collections.singleton(2), BeerChangeStream.Overflow.LATEST))
+                .then(() -> {
+                    changeStream.inventoryChanged(1, () -> 10);
+                    changeStream.priceChanged(2, new BigDecimal("9.99"));
+                })
+                .assertNext(change -> {
+                    assertThat(change.getBeerId()).isEqualTo(2);
+                    assertThat(change.getPrice()).isEqualByComparingTo("9.99");
+                    assertThat(change.getQuantityOnHand()).isNull();
+                })
+                .thenCancel()
+                .verify();
+    }
+
+    @Test
+    @DisplayName("A subscriber that falls behind is sent the latest change of each beer once it catches up")
+    void latestPerBeer() {
+        List<BeerChange> received = new ArrayList<>();
+        BaseSubscriber<BeerChange> subscriber = subscriber(received);
+
+        changeStream.changes(Collections.emptySet(), BeerChangeStream.Overflow.LATEST).subscribe(subscriber);
+
+        for (int quantity = 10; quantity > 0; quantity--) {
+            int quantityOnHand = quantity;
+            changeStream.inventoryChanged(1, () -> quantityOnHand);
+        }
+        changeStream.inventoryChanged(2, () -> 7);
+        changeStream.priceChanged(1, new BigDecimal("9.99"));
+        subscriber.request(3);
+
+        // one change a beer, in the order they fell behind, the price merged into the beer's latest stock
+        assertThat(received).extracting(BeerChange::getBeerId).containsExactly(1, 2);
+        assertThat(received.get(0).getQuantityOnHand()).isEqualTo(1);
+        assertThat(received.get(0).getPrice()).isEqualByComparingTo("9.99");
+        assertThat(received.get(1).getQuantityOnHand()).isEqualTo(7);
+        assertThat(meterRegistry.get("beer.changes.dropped").counter().count()).isZero();
+        subscriber.dispose();
+    }
+
+    @Test
+    @DisplayName("A subscriber that falls behind with latest keeps changes for at most max-pending-beers beers")
+    void latestBounded() {
+        List<BeerChange> received = new ArrayList<>();
+        BaseSubscriber<BeerChange> subscriber = subscriber(received);
+
+        changeStream.changes(Collections.emptySet(), BeerChangeStream.Overflow.LATEST).subscribe(subscriber);
+
+        changeStream.inventoryChanged(1, () -> 1);
+        changeStream.inventoryChanged(2, () -> 2);
+        changeStream.inventoryChanged(3, () -> 3);
+        changeStream.inventoryChanged(1, () -> 0);
+        subscriber.request(10);
+
+        assertThat(received).extracting(BeerChange::getQuantityOnHand).containsExactly(0, 2);
+        assertThat(meterRegistry.get("beer.changes.dropped").counter().count()).isEqualTo(1);
+        subscriber.dispose();
+    }
+
+    @Test
+    @DisplayName("A deletion replaces the changes a subscriber has not been sent for the beer")
+    void deletionReplacesLatest() {
+        List<BeerChange> received = new ArrayList<>();
+        BaseSubscriber<BeerChange> subscriber = subscriber(received);
+
+        changeStream.changes(Collections.emptySet(), BeerChangeStream.Overflow.LATEST).subscribe(subscriber);
+
+        changeStream.priceChanged(1, new BigDecimal("9.99"));
+        changeStream.beerDeleted(1);
+        subscriber.request(10);
+
+        assertThat(received).hasSize(1);
+        assertThat(received.get(0).getDeleted()).isTrue();
+        assertThat(received.get(0).getPrice()).isNull();
+        subscriber.dispose();
+    }
+
+    @Test
+    @DisplayName("Changes published from many threads at once are all emitted, the last of a beer carrying its current stock")
+    void concurrentPublishers() throws InterruptedException {
+        AtomicInteger counter = new AtomicInteger();
+        Map<Integer, Integer> lastSeen = new ConcurrentHashMap<>();
+
+        Disposable subscription = changeStream.changes(Collections.emptySet(), BeerChangeStream.Overflow.LATEST)
+                .subscribe(change -> lastSeen.put(change.getBeerId(), change.getQuantityOnHand()));
+
+        ExecutorService publishers = Executors.newFixedThreadPool(8);
+        for (int i = 0; i < 10_000; i++) {
+            int beerId = i % 2;
+            publishers.execute(() -> {
+                if (beerId == 0) {
+                    counter.incrementAndGet();
+                }
+                changeStream.inventoryChanged(beerId, beerId == 0 ? counter::get : () -> -1);
+            });
+        }
+        publishers.shutdown();
+        assertThat(publishers.awaitTermination(10, TimeUnit.SECONDS)).isTrue();
+
+        assertThat(lastSeen).containsEntry(0, 5_000).containsEntry(1, -1);
+        subscription.dispose();
+    }
+
+    @Test
+    @DisplayName("A subscriber that falls behind with drop loses the changes it had no room for")
+    void dropWhenBehind() {
+        List<BeerChange> received = new ArrayList<>();
+        BaseSubscriber<BeerChange> subscriber = subscriber(received);
+
+        changeStream.changes(Collections.emptySet(), BeerChangeStream.Overflow.DROP).subscribe(subscriber);
+
+        subscriber.request(1);
+        changeStream.inventoryChanged(1, () -> 3);
+        changeStream.inventoryChanged(1, () -> 2);
+        changeStream.inventoryChanged(1, () -> 1);
+        subscriber.request(1);
+        changeStream.inventoryChanged(1, () -> 0);
+
+        assertThat(received).extracting(BeerChange::getQuantityOnHand).containsExactly(3, 0);
+        assertThat(meterRegistry.get("beer.changes.dropped").counter().count()).isEqualTo(2);
+        subscriber.dispose();
+    }
+
+    // requests nothing until told to
+    private static BaseSubscriber<BeerChange> subscriber(List<BeerChange> received) {
+        return new BaseSubscriber<BeerChange>() {
+            @Override
+            protected void hookOnSubscribe(Subscription subscription) {
+            }
+
+            @Override
+            protected void hookOnNext(BeerChange change) {
+                received.add(change);
+            }
+        };
+    }
+}
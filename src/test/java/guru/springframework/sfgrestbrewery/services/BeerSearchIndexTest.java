@@ -0,0 +1,85 @@
+package guru.springframework.sfgrestbrewery.services;
+
+import guru.springframework.sfgrestbrewery.bootstrap.BeerLoader;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class BeerSearchIndexTest {
+
+    BeerSearchIndex searchIndex;
+
+    @BeforeEach
+    void setUp() {
+        searchIndex = new BeerSearchIndex();
+        searchIndex.index(1, 0L, "Mango Bobs", BeerLoader.BEER_1_UPC);
+        searchIndex.index(2, 0L, "Galaxy Cat", BeerLoader.BEER_2_UPC);
+        searchIndex.index(3, 0L, "Pinball Porter", BeerLoader.BEER_14_UPC);
+        searchIndex.index(4, 0L, "PBS Porter", BeerLoader.BEER_13_UPC);
+        searchIndex.index(5, 0L, "Pliny the Younger", BeerLoader.BEER_10_UPC);
+    }
+
+    @Test
+    @DisplayName("Whole tokens, prefixes and typos match, best matches first")
+    void tokenPrefixAndTypo() {
+        assertThat(searchIndex.search("porter", 10)).containsExactly(3, 4);
+        assertThat(searchIndex.search("pin", 10)).containsExactly(3);
+        assertThat(searchIndex.search("GALAXY", 10)).containsExactly(2);
+        assertThat(searchIndex.search("galxy", 10)).containsExactly(2);
+        assertThat(searchIndex.search("pliny younger", 10)).containsExactly(5);
+        assertThat(searchIndex.search("pliny porter", 10)).isEmpty();
+    }
+
+    @Test
+    @DisplayName("Upcs match by prefix")
+    void upcPrefix() {
+        assertThat(searchIndex.search(BeerLoader.BEER_2_UPC, 10)).containsExactly(2);
+        assertThat(searchIndex.search(BeerLoader.BEER_1_UPC.substring(0, 6), 10)).containsExactly(1);
+    }
+
+    @Test
+    @DisplayName("Updates replace the indexed name and deletes drop the beer")
+    void updateAndRemove() {
+        searchIndex.index(2, 1L, "Galaxy Dog", BeerLoader.BEER_2_UPC);
+        searchIndex.remove(3);
+
+        assertThat(searchIndex.search("cat", 10)).isEmpty();
+        assertThat(searchIndex.search("dog", 10)).containsExactly(2);
+        assertThat(searchIndex.search("porter", 10)).containsExactly(4);
+        assertThat(searchIndex.size()).isEqualTo(4);
+    }
+
+    @Test
+    @DisplayName("An update indexed after a later one does not replace it")
+    void staleUpdateIgnored() {
+        searchIndex.index(2, 2L, "Galaxy Dog", BeerLoader.BEER_2_UPC);
+        searchIndex.index(2, 1L, "Galaxy Mouse", BeerLoader.BEER_2_UPC);
+
+        assertThat(searchIndex.search("dog", 10)).containsExactly(2);
+        assertThat(searchIndex.search("mouse", 10)).isEmpty();
+    }
+
+    @Test
+    @DisplayName("A save indexed after the beer was removed does not bring it back until the tombstone expires")
+    void removedBeerNotIndexedAgain() {
+        AtomicLong nanoTime = new AtomicLong();
+        searchIndex = new BeerSearchIndex(Duration.ofNanos(10), nanoTime::get);
+        searchIndex.index(2, 0L, "Galaxy Cat", BeerLoader.BEER_2_UPC);
+
+        searchIndex.remove(2);
+        searchIndex.index(2, 1L, "Galaxy Cat", BeerLoader.BEER_2_UPC);
+
+        assertThat(searchIndex.search("galaxy", 10)).isEmpty();
+        assertThat(searchIndex.size()).isZero();
+
+        nanoTime.set(10);
+        searchIndex.index(2, 1L, "Galaxy Cat", BeerLoader.BEER_2_UPC);
+
+        assertThat(searchIndex.search("galaxy", 10)).containsExactly(2);
+    }
+}
@@ -0,0 +1,414 @@
+package guru.springframework.sfgrestbrewery.services;
+
+import guru.springframework.sfgrestbrewery.bootstrap.BeerLoader;
+import guru.springframework.sfgrestbrewery.domain.Beer;
+import guru.springframework.sfgrestbrewery.repositories.BeerRepository;
+import guru.springframework.sfgrestbrewery.web.controller.NotFoundException;
+import guru.springframework.sfgrestbrewery.web.mappers.BeerMapperImpl;
+import guru.springframework.sfgrestbrewery.web.model.BeerDto;
+import guru.springframework.sfgrestbrewery.web.model.BeerPagedList;
+import guru.springframework.sfgrestbrewery.web.model.BeerStyleEnum;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.cache.concurrent.ConcurrentMapCacheManager;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.data.r2dbc.core.R2dbcEntityTemplate;
+import org.springframework.data.r2dbc.core.ReactiveSelectOperation;
+import org.springframework.data.relational.core.query.Query;
+import org.springframework.transaction.ReactiveTransaction;
+import org.springframework.transaction.ReactiveTransactionManager;
+import org.springframework.transaction.reactive.TransactionalOperator;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.test.StepVerifier;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.stream.StreamSupport;
+
+import static guru.springframework.sfgrestbrewery.config.CacheConfig.BEER_CACHE;
+import static guru.springframework.sfgrestbrewery.config.CacheConfig.BEER_COUNT_CACHE;
+import static guru.springframework.sfgrestbrewery.config.CacheConfig.BEER_LIST_CACHE;
+import static guru.springframework.sfgrestbrewery.config.CacheConfig.BEER_UPC_CACHE;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyIterable;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+@ExtendWith(MockitoExtension.class)
+class BeerServiceImplTest {
+
+    @Mock
+    BeerRepository beerRepository;
+
+    @Mock
+    R2dbcEntityTemplate template;
+
+    @Mock
+    InventoryService inventoryService;
+
+    @Mock
+    ReactiveTransactionManager transactionManager;
+
+    BeerSearchIndex searchIndex;
+
+    BeerChangeStream changeStream;
+
+    BeerServiceImpl beerService;
+
+    Beer beer;
+
+    @BeforeEach
+    void setUp() {
+        searchIndex = new BeerSearchIndex();
+        changeStream = new BeerChangeStream(new SimpleMeterRegistry(), 10_000);
+        beerService = new BeerServiceImpl(beerRepository, new BeerMapperImpl(), template, TransactionalOperator.create(transactionManager),
+                new ConcurrentMapCacheManager(BEER_CACHE, BEER_UPC_CACHE, BEER_LIST_CACHE, BEER_COUNT_CACHE), searchIndex,
+                inventoryService, changeStream);
+
+        beer = Beer.builder()
+                .id(1)
+                .beerName("Mango Bobs")
+                .beerStyle(BeerStyleEnum.ALE)
+                .upc(BeerLoader.BEER_1_UPC)
+                .price(new BigDecimal("9.99"))
+                .quantityOnHand(25)
+                .build();
+    }
+
+    @Test
+    @DisplayName("Repeated get by ID is served from the cache")
+    void getByIdIsCached() {
+        given(beerRepository.findById(1)).willReturn(Mono.just(beer));
+
+        StepVerifier.create(beerService.getById(1, false)).expectNextCount(1).verifyComplete();
+        StepVerifier.create(beerService.getById(1, false)).expectNextCount(1).verifyComplete();
+
+        verify(beerRepository, times(1)).findById(1);
+    }
+
+    @Test
+    @DisplayName("Get by ID with inventory bypasses the cache")
+    void getByIdWithInventoryIsNotCached() {
+        given(beerRepository.findById(1)).willReturn(Mono.just(beer));
+        given(inventoryService.quantityOnHand(1)).willReturn(Mono.empty());
+
+        StepVerifier.create(beerService.getById(1, true))
+                .expectNextMatches(beerDto -> beerDto.getQuantityOnHand() == 25)
+                .verifyComplete();
+        StepVerifier.create(beerService.getById(1, true)).expectNextCount(1).verifyComplete();
+
+        verify(beerRepository, times(2)).findById(1);
+    }
+
+    @Test
+    @DisplayName("Get by ID with inventory includes reservations not yet written")
+    void getByIdWithInventorySeesPendingReservations() {
+        given(beerRepository.findById(1)).willReturn(Mono.just(beer));
+        given(inventoryService.quantityOnHand(1)).willReturn(Mono.just(20));
+
+        StepVerifier.create(beerService.getById(1, true))
+                .expectNextMatches(beerDto -> beerDto.getQuantityOnHand() == 20)
+                .verifyComplete();
+    }
+
+    @Test
+    @DisplayName("Get by UPC is served from the cache once loaded")
+    void getByUpcIsCached() {
+        given(beerRepository.findByUpc(BeerLoader.BEER_1_UPC)).willReturn(Mono.just(beer));
+
+        StepVerifier.create(beerService.getByUpc(BeerLoader.BEER_1_UPC)).expectNextCount(1).verifyComplete();
+        StepVerifier.create(beerService.getByUpc(BeerLoader.BEER_1_UPC)).expectNextCount(1).verifyComplete();
+        StepVerifier.create(beerService.getById(1, false)).expectNextCount(1).verifyComplete();
+
+        verify(beerRepository, times(1)).findByUpc(any());
+        verify(beerRepository, times(0)).findById(any(Integer.class));
+    }
+
+    @Test
+    @DisplayName("Concurrent gets for the same ID share one query")
+    void concurrentGetByIdIsCoalesced() {
+        given(beerRepository.findById(1)).willReturn(Mono.delay(Duration.ofMillis(100)).thenReturn(beer));
+        given(inventoryService.quantityOnHand(1)).willReturn(Mono.empty());
+
+        StepVerifier.create(Mono.zip(beerService.getById(1, true), beerService.getById(1, true), beerService.getById(1, false)))
+                .expectNextCount(1)
+                .verifyComplete();
+
+        verify(beerRepository, times(1)).findById(1);
+
+        // once the query completed, the next uncached get runs its own
+        StepVerifier.create(beerService.getById(1, true)).expectNextCount(1).verifyComplete();
+
+        verify(beerRepository, times(2)).findById(1);
+    }
+
+    @Test
+    @DisplayName("Updating a beer evicts it from the cache")
+    void updateEvictsCachedBeer() {
+        Beer updatedBeer = Beer.builder().id(1).beerName("Mango Bobs Updated").beerStyle(BeerStyleEnum.ALE).build();
+        beer.setVersion(0L);
+
+        given(beerRepository.findById(1)).willReturn(Mono.just(beer), Mono.just(updatedBeer));
+        given(beerRepository.updateBeer(any(), any(), any(), any(), any(), any(), any())).willReturn(Mono.just(1));
+
+        StepVerifier.create(beerService.getById(1, false)).expectNextCount(1).verifyComplete();
+
+        StepVerifier.create(beerService.updateBeer(1, updateDto(0L)))
+                .expectNextMatches(beerDto -> beerDto.getVersion() == 1L)
+                .verifyComplete();
+
+        StepVerifier.create(beerService.getById(1, false))
+                .expectNextMatches(beerDto -> beerDto.getBeerName().equals("Mango Bobs Updated"))
+                .verifyComplete();
+
+        verify(beerRepository, times(2)).findById(1);
+    }
+
+    @Test
+    @DisplayName("A load that read a beer before it was updated does not cache it after")
+    void loadRacingUpdateIsNotCached() {
+        Sinks.One<Beer> staleLoad = Sinks.one();
+        Beer updatedBeer = Beer.builder().id(1).version(1L).beerName("Mango Bobs Updated").beerStyle(BeerStyleEnum.ALE).build();
+
+        given(beerRepository.findById(1)).willReturn(staleLoad.asMono(), Mono.just(updatedBeer));
+        given(beerRepository.updateBeer(any(), any(), any(), any(), any(), any(), any())).willReturn(Mono.just(1));
+
+        Disposable loading = beerService.getById(1, false).subscribe();
+
+        StepVerifier.create(beerService.updateBeer(1, updateDto(0L))).expectNextCount(1).verifyComplete();
+        staleLoad.tryEmitValue(beer);
+        assertThat(loading.isDisposed()).isTrue();
+
+        StepVerifier.create(beerService.getById(1, false))
+                .expectNextMatches(beerDto -> beerDto.getBeerName().equals("Mango Bobs Updated"))
+                .verifyComplete();
+
+        verify(beerRepository, times(2)).findById(1);
+    }
+
+    @Test
+    @DisplayName("Updating a beer at a stale version is a conflict")
+    void updateStaleVersion() {
+        given(beerRepository.updateBeer(any(), any(), any(), any(), any(), any(), any())).willReturn(Mono.just(0));
+        given(beerRepository.existsById(1)).willReturn(Mono.just(true));
+
+        StepVerifier.create(beerService.updateBeer(1, updateDto(0L)))
+                .expectError(OptimisticLockingFailureException.class)
+                .verify();
+    }
+
+    @Test
+    @DisplayName("Updating a beer that does not exist is not found")
+    void updateMissingBeer() {
+        given(beerRepository.updateBeer(any(), any(), any(), any(), any(), any(), any())).willReturn(Mono.just(0));
+        given(beerRepository.existsById(99)).willReturn(Mono.just(false));
+
+        StepVerifier.create(beerService.updateBeer(99, updateDto(3L)))
+                .expectError(NotFoundException.class)
+                .verify();
+    }
+
+    @Test
+    @DisplayName("Updating a beer that does not exist without a version is not found")
+    void updateMissingBeerUnversioned() {
+        given(beerRepository.findById(99)).willReturn(Mono.empty());
+
+        StepVerifier.create(beerService.updateBeer(99, updateDto(null)))
+                .expectError(NotFoundException.class)
+                .verify();
+
+        verify(beerRepository, never()).updateBeer(any(), any(), any(), any(), any(), any(), any());
+    }
+
+    @Test
+    @DisplayName("An update without a version is applied at the current version and returns the one written")
+    void updateUnversioned() {
+        beer.setVersion(3L);
+        given(beerRepository.findById(1)).willReturn(Mono.just(beer));
+        given(beerRepository.updateBeer(eq(1), eq(3L), any(), any(), any(), any(), any())).willReturn(Mono.just(1));
+
+        StepVerifier.create(beerService.updateBeer(1, updateDto(null)))
+                .expectNextMatches(beerDto -> beerDto.getVersion() == 4L)
+                .verifyComplete();
+    }
+
+    @Test
+    @DisplayName("An update without a version that loses a race is applied at the version that won")
+    void updateUnversionedRaced() {
+        Beer racedBeer = Beer.builder().id(1).version(4L).beerName("Mango Bobs Raced").beerStyle(BeerStyleEnum.ALE).build();
+        beer.setVersion(3L);
+        given(beerRepository.findById(1)).willReturn(Mono.just(beer), Mono.just(racedBeer));
+        given(beerRepository.updateBeer(eq(1), eq(3L), any(), any(), any(), any(), any())).willReturn(Mono.just(0));
+        given(beerRepository.updateBeer(eq(1), eq(4L), any(), any(), any(), any(), any())).willReturn(Mono.just(1));
+        given(beerRepository.existsById(1)).willReturn(Mono.just(true));
+
+        StepVerifier.create(beerService.updateBeer(1, updateDto(null)))
+                .expectNextMatches(beerDto -> beerDto.getVersion() == 5L)
+                .verifyComplete();
+    }
+
+    @Test
+    @DisplayName("A versioned update of a cached beer publishes the price only when it changes it, without reading the beer")
+    void updatePublishesChangedPrice() {
+        beer.setVersion(3L);
+        given(beerRepository.findById(1)).willReturn(Mono.just(beer));
+        given(beerRepository.updateBeer(eq(1), any(), any(), any(), any(), any(), any())).willReturn(Mono.just(1));
+
+        BeerDto samePrice = updateDto(3L);
+        samePrice.setPrice(new BigDecimal("9.990"));
+        BeerDto newPrice = updateDto(4L);
+        newPrice.setPrice(new BigDecimal("10.49"));
+
+        StepVerifier.create(beerService.getById(1, false)).expectNextCount(1).verifyComplete();
+
+        StepVerifier.create(changeStream.changes(Collections.emptySet(), BeerChangeStream.Overflow.LATEST))
+                .then(() -> beerService.updateBeer(1, samePrice).block())
+                .then(() -> beerService.updateBeer(1, newPrice).block())
+                .assertNext(change -> assertThat(change.getPrice()).isEqualByComparingTo("10.49"))
+                .thenCancel()
+                .verify();
+
+        // only the get, the updates are one statement each
+        verify(beerRepository, times(1)).findById(1);
+    }
+
+    @Test
+    @DisplayName("Deleting a beer publishes its deletion")
+    void deletePublishesDeletion() {
+        given(beerRepository.findById(1)).willReturn(Mono.just(beer));
+        given(beerRepository.deleteById(1)).willReturn(Mono.empty());
+
+        StepVerifier.create(changeStream.changes(Collections.emptySet(), BeerChangeStream.Overflow.LATEST))
+                .then(() -> beerService.deleteBeerByIdReactive(1).block())
+                .assertNext(change -> {
+                    assertThat(change.getBeerId()).isEqualTo(1);
+                    assertThat(change.getDeleted()).isTrue();
+                })
+                .thenCancel()
+                .verify();
+
+        verify(inventoryService).forget(1);
+    }
+
+    @Test
+    @DisplayName("Batch get by IDs loads only uncached beers and keeps request order")
+    void getByIdsLoadsMissingInOneQuery() {
+        Beer otherBeer = Beer.builder().id(2).beerName("Galaxy Cat").beerStyle(BeerStyleEnum.PALE_ALE).build();
+
+        given(beerRepository.findById(1)).willReturn(Mono.just(beer));
+        given(beerRepository.findAllById(anyIterable())).willReturn(Flux.just(otherBeer));
+
+        StepVerifier.create(beerService.getById(1, false)).expectNextCount(1).verifyComplete();
+
+        StepVerifier.create(beerService.getByIds(Arrays.asList(2, 99, 1)))
+                .expectNextMatches(result -> result.getId() == 2 && result.isFound() && result.getBeer().getBeerName().equals("Galaxy Cat"))
+                .expectNextMatches(result -> result.getId() == 99 && !result.isFound() && result.getBeer() == null)
+                .expectNextMatches(result -> result.getId() == 1 && result.isFound())
+                .verifyComplete();
+
+        verify(beerRepository).findAllById(argThat((Iterable<Integer> ids) -> ids.iterator().hasNext()
+                && StreamSupport.stream(ids.spliterator(), false).noneMatch(id -> id == 1)));
+    }
+
+    @Test
+    @DisplayName("A keyset page's cursor picks up after its last beer, and the page after it is the last")
+    void keysetCursorRoundTrip() {
+        Beer otherBeer = Beer.builder().id(2).beerName("Galaxy Cat").beerStyle(BeerStyleEnum.PALE_ALE).build();
+        ReactiveSelectOperation.ReactiveSelect<Beer> select = mock(ReactiveSelectOperation.ReactiveSelect.class);
+
+        given(template.select(Beer.class)).willReturn(select);
+        given(select.matching(any())).willReturn(select);
+        given(select.all()).willReturn(Flux.just(beer, otherBeer), Flux.just(otherBeer));
+        given(template.count(any(), eq(Beer.class))).willReturn(Mono.just(2L));
+
+        BeerPagedList firstPage = beerService.listBeersAfter(null, null, null, 1, false).block();
+
+        assertThat(firstPage.getContent()).hasSize(1);
+        assertThat(firstPage.isFirst()).isTrue();
+        assertThat(firstPage.isLast()).isFalse();
+        assertThat(BeerCursor.decode(firstPage.getNextCursor())).isEqualTo(1);
+
+        BeerPagedList nextPage = beerService.listBeersAfter(null, null, firstPage.getNextCursor(), 1, false).block();
+
+        assertThat(nextPage.getContent()).hasSize(1);
+        assertThat(nextPage.isFirst()).isFalse();
+        assertThat(nextPage.isLast()).isTrue();
+        assertThat(nextPage.getNextCursor()).isNull();
+
+        ArgumentCaptor<Query> queries = ArgumentCaptor.forClass(Query.class);
+        verify(select, times(2)).matching(queries.capture());
+        assertThat(queries.getAllValues().get(1).getCriteria().map(Object::toString)).hasValue("id > 1");
+    }
+
+    @Test
+    @DisplayName("A cursor the service did not issue is rejected")
+    void invalidCursor() {
+        lenient().when(template.count(any(), eq(Beer.class))).thenReturn(Mono.just(0L));
+
+        StepVerifier.create(beerService.listBeersAfter(null, null, "not-a-cursor", 25, false))
+                .expectError(InvalidCursorException.class)
+                .verify();
+    }
+
+    @Test
+    @DisplayName("A saved batch is indexed once its transaction has committed")
+    void saveBeersIndexedAfterCommit() {
+        given(transactionManager.getReactiveTransaction(any())).willReturn(Mono.just(mock(ReactiveTransaction.class)));
+        given(transactionManager.commit(any())).willReturn(Mono.fromRunnable(() ->
+                assertThat(searchIndex.search("mango", 10)).isEmpty()));
+        given(beerRepository.insertAll(any())).willReturn(Flux.just(beer));
+
+        StepVerifier.create(beerService.saveBeers(Collections.singletonList(updateDto(null))))
+                .expectNextMatches(beerDto -> beerDto.getId() == 1)
+                .verifyComplete();
+
+        verify(transactionManager).commit(any());
+        assertThat(searchIndex.search("mango", 10)).containsExactly(1);
+    }
+
+    @Test
+    @DisplayName("A batch that rolls back leaves nothing in the search index")
+    void saveBeersRolledBackNotIndexed() {
+        given(transactionManager.getReactiveTransaction(any())).willReturn(Mono.just(mock(ReactiveTransaction.class)));
+        given(transactionManager.rollback(any())).willReturn(Mono.empty());
+        given(beerRepository.insertAll(any())).willReturn(Flux.just(beer)
+                .concatWith(Flux.error(new DataIntegrityViolationException("duplicate upc"))));
+
+        StepVerifier.create(beerService.saveBeers(Arrays.asList(updateDto(null), updateDto(null))))
+                .expectError(DataIntegrityViolationException.class)
+                .verify();
+
+        verify(transactionManager).rollback(any());
+        verify(transactionManager, never()).commit(any());
+        assertThat(searchIndex.search("mango", 10)).isEmpty();
+        assertThat(searchIndex.size()).isZero();
+    }
+
+    private BeerDto updateDto(Long version) {
+        return BeerDto.builder()
+                .version(version)
+                .beerName("Mango Bobs Updated")
+                .beerStyle("ALE")
+                .upc(BeerLoader.BEER_2_UPC)
+                .build();
+    }
+}
@@ -0,0 +1,128 @@
+package guru.springframework.sfgrestbrewery.services;
+
+import guru.springframework.sfgrestbrewery.domain.Beer;
+import guru.springframework.sfgrestbrewery.repositories.BeerRepository;
+import guru.springframework.sfgrestbrewery.web.controller.InsufficientInventoryException;
+import guru.springframework.sfgrestbrewery.web.controller.NotFoundException;
+import guru.springframework.sfgrestbrewery.web.model.BeerChange;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.util.Collections;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+@ExtendWith(MockitoExtension.class)
+class InventoryServiceImplTest {
+
+    @Mock
+    BeerRepository beerRepository;
+
+    InventoryWriteBehind writeBehind;
+
+    BeerChangeStream changeStream;
+
+    InventoryServiceImpl inventoryService;
+
+    @BeforeEach
+    void setUp() {
+        // flushed by hand, the scheduled flushes only start with afterPropertiesSet
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+        writeBehind = new InventoryWriteBehind(beerRepository, meterRegistry, Duration.ofMinutes(1), 100);
+        changeStream = new BeerChangeStream(meterRegistry, 10_000);
+        inventoryService = new InventoryServiceImpl(beerRepository, writeBehind, changeStream);
+    }
+
+    @Test
+    @DisplayName("Concurrent reservations never take more than is on hand, and are written as one update")
+    void concurrentReservations() {
+        given(beerRepository.findById(1)).willReturn(Mono.just(Beer.builder().id(1).quantityOnHand(100).build()));
+        given(beerRepository.adjustInventory(any())).willReturn(Mono.just(Collections.emptySet()));
+
+        Long reserved = Flux.range(0, 150)
+                .flatMap(i -> inventoryService.reserve(1, 1)
+                        .subscribeOn(Schedulers.parallel())
+                        .onErrorResume(InsufficientInventoryException.class, e -> Mono.empty()))
+                .count()
+                .block();
+
+        assertThat(reserved).isEqualTo(100);
+        StepVerifier.create(inventoryService.quantityOnHand(1)).expectNext(0).verifyComplete();
+
+        StepVerifier.create(writeBehind.flush()).expectNext(1).verifyComplete();
+        verify(beerRepository).adjustInventory(Collections.singletonMap(1, -100));
+    }
+
+    @Test
+    @DisplayName("A release puts back what a reservation took, both are published, and nothing is left to write")
+    void reserveAndRelease() {
+        given(beerRepository.findById(1)).willReturn(Mono.just(Beer.builder().id(1).quantityOnHand(10).build()));
+
+        StepVerifier.create(changeStream.changes(Collections.emptySet(), BeerChangeStream.Overflow.DROP)
+                        .map(BeerChange::getQuantityOnHand))
+                .then(() -> {
+                    StepVerifier.create(inventoryService.reserve(1, 4))
+                            .assertNext(inventory -> assertThat(inventory.getQuantityOnHand()).isEqualTo(6))
+                            .verifyComplete();
+                    StepVerifier.create(inventoryService.release(1, 4))
+                            .assertNext(inventory -> assertThat(inventory.getQuantityOnHand()).isEqualTo(10))
+                            .verifyComplete();
+                })
+                .expectNext(6, 10)
+                .thenCancel()
+                .verify();
+
+        StepVerifier.create(writeBehind.flush()).expectNext(0).verifyComplete();
+        verify(beerRepository, never()).adjustInventory(any());
+    }
+
+    @Test
+    @DisplayName("A reservation the database turns down is lost, the stock is reset keeping the movements since")
+    void rejectedReservationResetsStock() {
+        given(beerRepository.findById(1)).willReturn(Mono.just(Beer.builder().id(1).quantityOnHand(10).build()));
+        // a release acknowledged while the rejected reservation is being written
+        given(beerRepository.adjustInventory(any())).willAnswer(invocation -> Mono.fromCallable(() -> {
+            inventoryService.release(1, 1).block();
+            return Collections.singleton(1);
+        }));
+        given(beerRepository.findAllById(Collections.singleton(1)))
+                .willReturn(Flux.just(Beer.builder().id(1).quantityOnHand(3).build()));
+
+        StepVerifier.create(inventoryService.reserve(1, 8))
+                .assertNext(inventory -> assertThat(inventory.getQuantityOnHand()).isEqualTo(2))
+                .verifyComplete();
+
+        StepVerifier.create(writeBehind.flush()).expectNext(0).verifyComplete();
+
+        // what the database has, plus the release it has yet to be sent
+        StepVerifier.create(inventoryService.quantityOnHand(1)).expectNext(4).verifyComplete();
+        assertThat(writeBehind.pending(1)).isEqualTo(1);
+        verify(beerRepository).findById(1);
+    }
+
+    @Test
+    @DisplayName("Unknown beers are not found")
+    void unknownBeer() {
+        given(beerRepository.findById(anyInt())).willReturn(Mono.empty());
+
+        StepVerifier.create(inventoryService.reserve(99, 1)).expectError(NotFoundException.class).verify();
+        StepVerifier.create(inventoryService.release(99, 1)).expectError(NotFoundException.class).verify();
+        StepVerifier.create(inventoryService.quantityOnHand(99)).verifyComplete();
+    }
+}
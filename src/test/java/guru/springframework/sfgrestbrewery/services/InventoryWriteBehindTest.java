@@ -0,0 +1,152 @@
+package guru.springframework.sfgrestbrewery.services;
+
+import guru.springframework.sfgrestbrewery.domain.Beer;
+import guru.springframework.sfgrestbrewery.repositories.BeerRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.entry;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.verify;
+
+@ExtendWith(MockitoExtension.class)
+class InventoryWriteBehindTest {
+
+    @Mock
+    BeerRepository beerRepository;
+
+    SimpleMeterRegistry meterRegistry;
+
+    InventoryWriteBehind writeBehind;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        writeBehind = new InventoryWriteBehind(beerRepository, meterRegistry, Duration.ofMinutes(1), 2);
+    }
+
+    @Test
+    @DisplayName("Deltas for the same beer are written as one row update")
+    void coalescesPerBeer() {
+        given(beerRepository.adjustInventory(any())).willReturn(Mono.just(Collections.emptySet()));
+
+        Flux.range(0, 10).concatMap(i -> writeBehind.add(1, -1)).blockLast();
+        writeBehind.add(2, 3).block();
+
+        StepVerifier.create(writeBehind.flush()).expectNext(2).verifyComplete();
+
+        Map<Integer, Integer> written = new HashMap<>();
+        written.put(1, -10);
+        written.put(2, 3);
+        verify(beerRepository).adjustInventory(written);
+
+        assertThat(meterRegistry.get("inventory.writebehind.deltas").counter().count()).isEqualTo(11);
+        assertThat(meterRegistry.get("inventory.writebehind.rows").counter().count()).isEqualTo(2);
+        assertThat(meterRegistry.get("inventory.writebehind.coalescing.ratio").gauge().value()).isEqualTo(5.5);
+    }
+
+    @Test
+    @DisplayName("Deltas a failed flush could not write go out with the next one")
+    void failedFlushIsRetried() {
+        given(beerRepository.adjustInventory(any()))
+                .willReturn(Mono.error(new IllegalStateException("database unavailable")))
+                .willReturn(Mono.just(Collections.emptySet()));
+
+        writeBehind.add(1, -2).block();
+        StepVerifier.create(writeBehind.flush()).expectError(IllegalStateException.class).verify();
+
+        writeBehind.add(1, -1).block();
+        StepVerifier.create(writeBehind.flush()).expectNext(1).verifyComplete();
+
+        verify(beerRepository).adjustInventory(Collections.singletonMap(1, -3));
+    }
+
+    @Test
+    @DisplayName("A delta for one beer more than the buffer holds waits for a flush")
+    void fullBufferFlushes() {
+        given(beerRepository.adjustInventory(any())).willReturn(Mono.just(Collections.emptySet()));
+
+        writeBehind.add(1, -1).block();
+        writeBehind.add(2, -1).block();
+        writeBehind.add(1, -1).block();
+        assertThat(meterRegistry.get("inventory.writebehind.pending").gauge().value()).isEqualTo(2);
+
+        writeBehind.add(3, -1).block();
+
+        Map<Integer, Integer> flushed = new HashMap<>();
+        flushed.put(1, -2);
+        flushed.put(2, -1);
+        verify(beerRepository).adjustInventory(flushed);
+        assertThat(meterRegistry.get("inventory.writebehind.pending").gauge().value()).isEqualTo(1);
+    }
+
+    @Test
+    @DisplayName("Pending deltas are written when the context closes")
+    void flushesOnShutdown() {
+        given(beerRepository.adjustInventory(any())).willReturn(Mono.just(Collections.emptySet()));
+
+        writeBehind.afterPropertiesSet();
+        writeBehind.add(1, 5).block();
+        writeBehind.destroy();
+
+        verify(beerRepository).adjustInventory(Collections.singletonMap(1, 5));
+    }
+
+    @Test
+    @DisplayName("A delta taken while a flush writes is written before the context closes")
+    void flushesDeltasArrivingDuringShutdownFlush() {
+        given(beerRepository.adjustInventory(any()))
+                .willAnswer(invocation -> Mono.fromCallable(() -> {
+                    writeBehind.add(2, -1).block();
+                    return Collections.<Integer>emptySet();
+                }))
+                .willReturn(Mono.just(Collections.emptySet()));
+
+        writeBehind.afterPropertiesSet();
+        writeBehind.add(1, 5).block();
+        writeBehind.destroy();
+
+        verify(beerRepository).adjustInventory(Collections.singletonMap(1, 5));
+        verify(beerRepository).adjustInventory(Collections.singletonMap(2, -1));
+        assertThat(meterRegistry.get("inventory.writebehind.pending").gauge().value()).isZero();
+    }
+
+    @Test
+    @DisplayName("A delta the database turns down is dropped and reported, one for a deleted beer only dropped")
+    void rejectedDeltaReported() {
+        Map<Integer, Integer> rejections = new HashMap<>();
+        writeBehind = new InventoryWriteBehind(beerRepository, meterRegistry, Duration.ofMinutes(1), 10);
+        writeBehind.onRejected(rejections::put);
+
+        given(beerRepository.adjustInventory(any())).willReturn(Mono.just(new HashSet<>(Arrays.asList(1, 3))));
+        given(beerRepository.findAllById(new HashSet<>(Arrays.asList(1, 3))))
+                .willReturn(Flux.just(Beer.builder().id(1).quantityOnHand(2).build()));
+
+        writeBehind.add(1, -5).block();
+        writeBehind.add(2, -1).block();
+        writeBehind.add(3, -1).block();
+
+        StepVerifier.create(writeBehind.flush()).expectNext(1).verifyComplete();
+
+        assertThat(rejections).containsExactly(entry(1, 2));
+        assertThat(meterRegistry.get("inventory.writebehind.rejected").counter().count()).isEqualTo(1);
+        assertThat(meterRegistry.get("inventory.writebehind.pending").gauge().value()).isZero();
+    }
+}
@@ -0,0 +1,65 @@
+package guru.springframework.sfgrestbrewery.services;
+
+import guru.springframework.sfgrestbrewery.web.controller.NotFoundException;
+import guru.springframework.sfgrestbrewery.web.model.BeerDto;
+import guru.springframework.sfgrestbrewery.web.model.BeerPagedList;
+import guru.springframework.sfgrestbrewery.web.model.BeerStyleEnum;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.domain.PageRequest;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.util.Collections;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.BDDMockito.given;
+
+@ExtendWith(MockitoExtension.class)
+class MeteredBeerServiceTest {
+
+    @Mock
+    BeerServiceImpl beerServiceImpl;
+
+    SimpleMeterRegistry meterRegistry;
+
+    MeteredBeerService beerService;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        beerService = new MeteredBeerService(beerServiceImpl, meterRegistry);
+    }
+
+    @Test
+    @DisplayName("List calls are timed by filter shape")
+    void listBeersTaggedByFilter() {
+        given(beerServiceImpl.listBeers(any(), any(), any(), any()))
+                .willReturn(Mono.just(new BeerPagedList(Collections.emptyList(), PageRequest.of(0, 25), 0)));
+
+        StepVerifier.create(beerService.listBeers(null, BeerStyleEnum.ALE, PageRequest.of(0, 25), false)).expectNextCount(1).verifyComplete();
+        StepVerifier.create(beerService.listBeers("Mango Bobs", BeerStyleEnum.ALE, PageRequest.of(0, 25), false)).expectNextCount(1).verifyComplete();
+
+        assertThat(meterRegistry.get("beer.service").tags("operation", "listBeers", "filter", "style", "outcome", "success").timer().count()).isEqualTo(1);
+        assertThat(meterRegistry.get("beer.service").tags("operation", "listBeers", "filter", "both", "outcome", "success").timer().count()).isEqualTo(1);
+    }
+
+    @Test
+    @DisplayName("Empty results and errors are counted separately")
+    void emptyAndErrorOutcomes() {
+        given(beerServiceImpl.getById(any(), any())).willReturn(Mono.empty());
+        given(beerServiceImpl.updateBeer(any(), any())).willReturn(Mono.error(new NotFoundException()));
+
+        StepVerifier.create(beerService.getById(99, false)).verifyComplete();
+        StepVerifier.create(beerService.updateBeer(99, BeerDto.builder().build())).expectError(NotFoundException.class).verify();
+
+        assertThat(meterRegistry.get("beer.service").tags("operation", "getById", "outcome", "empty").timer().count()).isEqualTo(1);
+        assertThat(meterRegistry.get("beer.service").tags("operation", "updateBeer", "outcome", "error", "exception", "NotFoundException").timer().count()).isEqualTo(1);
+    }
+}
@@ -0,0 +1,47 @@
+package guru.springframework.sfgrestbrewery.services;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class SingleFlightTest {
+
+    SingleFlight<String, Integer> singleFlight = new SingleFlight<>();
+
+    AtomicInteger loads = new AtomicInteger();
+
+    @Test
+    @DisplayName("Callers arriving while a load is in flight share it")
+    void concurrentLoadsShared() {
+        Supplier<Mono<Integer>> loader = () -> Mono.delay(Duration.ofMillis(50)).map(tick -> loads.incrementAndGet());
+
+        StepVerifier.create(Mono.zip(singleFlight.load("key", loader), singleFlight.load("key", loader)))
+                .assertNext(results -> {
+                    assertThat(results.getT1()).isEqualTo(1);
+                    assertThat(results.getT2()).isEqualTo(1);
+                })
+                .verifyComplete();
+    }
+
+    @Test
+    @DisplayName("A load started as the previous one completes runs again rather than replaying it")
+    void loadStartedOnCompletionRunsAgain() {
+        Supplier<Mono<Integer>> loader = () -> Mono.delay(Duration.ofMillis(10)).map(tick -> loads.incrementAndGet());
+
+        StepVerifier.create(singleFlight.load("key", loader).then(singleFlight.load("key", loader)))
+                .expectNext(2)
+                .verifyComplete();
+
+        StepVerifier.create(singleFlight.load("key", () -> Mono.fromSupplier(loads::incrementAndGet))
+                        .flatMap(first -> singleFlight.load("key", () -> Mono.fromSupplier(loads::incrementAndGet))))
+                .expectNext(4)
+                .verifyComplete();
+    }
+}
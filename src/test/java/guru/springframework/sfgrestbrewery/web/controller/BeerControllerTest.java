@@ -2,6 +2,7 @@ package guru.springframework.sfgrestbrewery.web.controller;
 
 import guru.springframework.sfgrestbrewery.bootstrap.BeerLoader;
 import guru.springframework.sfgrestbrewery.services.BeerService;
+import guru.springframework.sfgrestbrewery.services.InvalidCursorException;
 import guru.springframework.sfgrestbrewery.web.model.BeerDto;
 import guru.springframework.sfgrestbrewery.web.model.BeerPagedList;
 import org.junit.jupiter.api.BeforeEach;
@@ -13,6 +14,7 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.reactive.WebFluxTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
 import org.springframework.data.domain.PageRequest;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.test.web.reactive.server.WebTestClient;
 import org.springframework.web.reactive.function.BodyInserters;
@@ -20,6 +22,7 @@ import reactor.core.publisher.Mono;
 
 import java.math.BigDecimal;
 import java.time.LocalDateTime;
+import java.time.ZonedDateTime;
 import java.util.Arrays;
 
 
@@ -113,6 +116,38 @@ class BeerControllerTest {
                 .jsonPath("$.content.length()").isEqualTo(2);
     }
 
+    @Test
+    @DisplayName("List beers after a cursor")
+    public void listBeersAfterCursor() throws Exception {
+        beerPagedList = new BeerPagedList(Arrays.asList(validBeerForGet), 1, 2, false, "next");
+
+        given(beerService.listBeersAfter(any(), any(), any(), any(), any())).willReturn(Mono.just(beerPagedList));
+
+        webTestClient.get().uri("/api/v1/beer?after=abc&pageSize=1")
+                .accept(MediaType.APPLICATION_JSON)
+                .exchange()
+                .expectBody()
+                .jsonPath("$.content[0].beerName").isEqualTo("Test beer")
+                .jsonPath("$.nextCursor").isEqualTo("next")
+                .jsonPath("$.first").isEqualTo(false)
+                .jsonPath("$.last").isEqualTo(false)
+                .jsonPath("$.number").doesNotExist()
+                .jsonPath("$.pageable").doesNotExist();
+
+        verify(beerService, times(1)).listBeersAfter(any(), any(), any(), any(), any());
+    }
+
+    @Test
+    @DisplayName("An invalid cursor is a bad request")
+    public void listBeersAfterInvalidCursor() throws Exception {
+        given(beerService.listBeersAfter(any(), any(), any(), any(), any())).willReturn(Mono.error(new InvalidCursorException("abc")));
+
+        webTestClient.get().uri("/api/v1/beer?after=abc")
+                .accept(MediaType.APPLICATION_JSON)
+                .exchange()
+                .expectStatus().isBadRequest();
+    }
+
     @Test
     @DisplayName("Get a beer by ID")
     public void getBeerById() throws Exception {
@@ -130,6 +165,64 @@ class BeerControllerTest {
         verify(beerService, times(1)).getById(any(), any());
     }
 
+    @Test
+    @DisplayName("Get a beer by ID the client already has")
+    public void getBeerByIdNotModified() throws Exception {
+
+        validBeerForGet.setVersion(2L);
+        given(beerService.getById(any(), any())).willReturn(Mono.just(validBeerForGet));
+
+        String eTag = webTestClient.get()
+                .uri("/api/v1/beer/9")
+                .accept(MediaType.APPLICATION_JSON)
+                .exchange()
+                .expectStatus().isOk()
+                .expectHeader().valueEquals("ETag", "\"9-2-0\"")
+                .returnResult(BeerDto.class)
+                .getResponseHeaders().getETag();
+
+        webTestClient.get()
+                .uri("/api/v1/beer/9")
+                .accept(MediaType.APPLICATION_JSON)
+                .ifNoneMatch(eTag)
+                .exchange()
+                .expectStatus().isNotModified()
+                .expectBody().isEmpty();
+    }
+
+    @Test
+    @DisplayName("Get a beer by ID with its stock is not answered from If-Modified-Since once the stock moved")
+    public void getBeerByIdWithInventoryIgnoresModifiedSince() throws Exception {
+
+        validBeerForGet.setVersion(2L);
+        BeerDto beerWithoutInventory = BeerDto.builder()
+                .id(9)
+                .version(2L)
+                .beerName("Test beer")
+                .beerStyle("PALE_ALE")
+                .lastUpdatedDate(validBeerForGet.getLastUpdatedDate())
+                .build();
+        given(beerService.getById(any(), any())).willReturn(Mono.just(beerWithoutInventory), Mono.just(validBeerForGet));
+
+        ZonedDateTime lastModified = webTestClient.get()
+                .uri("/api/v1/beer/9")
+                .accept(MediaType.APPLICATION_JSON)
+                .exchange()
+                .expectStatus().isOk()
+                .expectHeader().exists(HttpHeaders.LAST_MODIFIED)
+                .returnResult(BeerDto.class)
+                .getResponseHeaders().getFirstZonedDateTime(HttpHeaders.LAST_MODIFIED);
+
+        webTestClient.get()
+                .uri("/api/v1/beer/9?showInventoryOnHand=true")
+                .accept(MediaType.APPLICATION_JSON)
+                .ifModifiedSince(lastModified)
+                .exchange()
+                .expectStatus().isOk()
+                .expectHeader().doesNotExist(HttpHeaders.LAST_MODIFIED)
+                .expectHeader().valueEquals("ETag", "\"9-2-0\"");
+    }
+
     @Test
     @DisplayName("Get a beer by UPC")
     public void getBeerByUpc() throws Exception {
@@ -192,13 +285,27 @@ class BeerControllerTest {
 
         Integer beerID = 1;
 
+        given(beerService.deleteBeerByIdReactive(any())).willReturn(Mono.empty());
+
         webTestClient.delete().uri("/api/v1/beer/" + beerID)
                 .accept(MediaType.APPLICATION_JSON)
                 .exchange()
                 .expectStatus().isOk()
                 .expectBody().isEmpty();
 
-        verify(beerService, times(1)).deleteBeerById(any());
+        verify(beerService, times(1)).deleteBeerByIdReactive(any());
 
     }
-}
\ No newline at end of file
+
+    @Test
+    @DisplayName("Delete a beer that does not exist")
+    public void deleteBeerByIdNotFound() throws Exception {
+
+        given(beerService.deleteBeerByIdReactive(any())).willReturn(Mono.error(new NotFoundException()));
+
+        webTestClient.delete().uri("/api/v1/beer/999")
+                .accept(MediaType.APPLICATION_JSON)
+                .exchange()
+                .expectStatus().isNotFound();
+    }
+}
@@ -0,0 +1,70 @@
+package guru.springframework.sfgrestbrewery.web.controller;
+
+import guru.springframework.sfgrestbrewery.services.CustomerService;
+import guru.springframework.sfgrestbrewery.web.model.CustomerDto;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.reactive.WebFluxTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.reactive.server.WebTestClient;
+import reactor.core.publisher.Mono;
+
+import java.util.UUID;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.BDDMockito.given;
+
+@WebFluxTest(CustomerController.class)
+class CustomerControllerTest {
+
+    @Autowired
+    WebTestClient webTestClient;
+
+    @MockBean
+    CustomerService customerService;
+
+    @Test
+    @DisplayName("Get customer returns the customer, or 404 for an unknown id")
+    void getCustomer() {
+        UUID customerId = UUID.randomUUID();
+        given(customerService.getCustomerById(any())).willReturn(Mono.empty());
+        given(customerService.getCustomerById(customerId)).willReturn(Mono.just(CustomerDto.builder().id(customerId).name("Joe Buck").build()));
+
+        webTestClient.get().uri("/api/v1/customer/" + customerId)
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody().jsonPath("$.name").isEqualTo("Joe Buck");
+
+        webTestClient.get().uri("/api/v1/customer/" + UUID.randomUUID())
+                .exchange()
+                .expectStatus().isNotFound();
+    }
+
+    @Test
+    @DisplayName("Post customer returns 201 with the new customer's location")
+    void postCustomer() {
+        UUID customerId = UUID.randomUUID();
+        given(customerService.saveNewCustomer(any())).willReturn(Mono.just(CustomerDto.builder().id(customerId).name("Joe Buck").build()));
+
+        webTestClient.post().uri("/api/v1/customer")
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue(CustomerDto.builder().name("Joe Buck").build())
+                .exchange()
+                .expectStatus().isCreated()
+                .expectHeader().valueEquals("Location", "/api/v1/customer/" + customerId);
+    }
+
+    @Test
+    @DisplayName("Update of an unknown customer returns 404")
+    void updateUnknownCustomer() {
+        given(customerService.updateCustomer(any(), any())).willReturn(Mono.error(new NotFoundException()));
+
+        webTestClient.put().uri("/api/v1/customer/" + UUID.randomUUID())
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue(CustomerDto.builder().name("Joe Buck").build())
+                .exchange()
+                .expectStatus().isNotFound();
+    }
+}
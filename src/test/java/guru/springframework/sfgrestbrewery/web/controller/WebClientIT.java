@@ -39,7 +39,7 @@ public class WebClientIT {
     void setUp() {
         webClient = WebClient.builder()
                 .baseUrl(BASE_URL)
-                .clientConnector(new ReactorClientHttpConnector(HttpClient.create().wiretap(true)))
+                .clientConnector(new ReactorClientHttpConnector(HttpClient.create().wiretap(Boolean.getBoolean("wiretrace"))))
                 .build();
     }
 
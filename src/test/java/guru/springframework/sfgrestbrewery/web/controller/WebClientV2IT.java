@@ -45,7 +45,7 @@ public class WebClientV2IT {
     void setUp() {
         webClient = WebClient.builder()
                 .baseUrl(BASE_URL)
-                .clientConnector(new ReactorClientHttpConnector(HttpClient.create().wiretap(true)))
+                .clientConnector(new ReactorClientHttpConnector(HttpClient.create().wiretap(Boolean.getBoolean("wiretrace"))))
                 .build();
     }
 
@@ -253,7 +253,7 @@ public class WebClientV2IT {
                 .accept(MediaType.APPLICATION_JSON).body(BodyInserters
                 .fromValue(BeerDto.builder()
                         .beerName(newBeerName)
-                        .upc("1233455")
+                        .upc("1233456")
                         .beerStyle("PALE_ALE")
                         .price(new BigDecimal("8.99"))
                         .build()))
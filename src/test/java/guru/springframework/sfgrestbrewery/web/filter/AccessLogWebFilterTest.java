@@ -0,0 +1,108 @@
+package guru.springframework.sfgrestbrewery.web.filter;
+
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.read.ListAppender;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import guru.springframework.sfgrestbrewery.services.BeerService;
+import guru.springframework.sfgrestbrewery.web.controller.BeerController;
+import guru.springframework.sfgrestbrewery.web.model.BeerDto;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.reactive.WebFluxTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.reactive.server.WebTestClient;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.BDDMockito.given;
+
+@WebFluxTest(BeerController.class)
+class AccessLogWebFilterTest {
+
+    @Autowired
+    WebTestClient webTestClient;
+
+    @MockBean
+    BeerService beerService;
+
+    ObjectMapper objectMapper = new ObjectMapper();
+
+    ListAppender<ILoggingEvent> accessLog = new ListAppender<>();
+
+    @BeforeEach
+    void setUp() {
+        accessLog.start();
+        ((Logger) LoggerFactory.getLogger("access")).addAppender(accessLog);
+    }
+
+    @AfterEach
+    void tearDown() {
+        ((Logger) LoggerFactory.getLogger("access")).detachAppender(accessLog);
+    }
+
+    @Test
+    @DisplayName("A successful response is logged with its route, status and body size")
+    void logsSuccessfulResponse() throws Exception {
+        given(beerService.getById(any(), any())).willReturn(Mono.just(BeerDto.builder()
+                .id(1)
+                .beerName("Mango Bobs")
+                .beerStyle("ALE")
+                .build()));
+
+        long bodyBytes = webTestClient.get()
+                .uri("/api/v1/beer/1")
+                .accept(MediaType.APPLICATION_JSON)
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody()
+                .returnResult()
+                .getResponseBodyContent().length;
+
+        JsonNode entry = accessLogEntry();
+        assertThat(entry.get("route").asText()).isEqualTo("/api/v1/beer/{beerId}");
+        assertThat(entry.get("path").asText()).isEqualTo("/api/v1/beer/1");
+        assertThat(entry.get("status").asInt()).isEqualTo(200);
+        assertThat(entry.get("bytes").asLong()).isEqualTo(bodyBytes).isPositive();
+    }
+
+    @Test
+    @DisplayName("An error response written by the error handler is logged with its status and body size")
+    void logsErrorResponse() throws Exception {
+        given(beerService.getById(any(), any())).willReturn(Mono.error(new IllegalStateException("boom")));
+
+        long bodyBytes = webTestClient.get()
+                .uri("/api/v1/beer/1")
+                .accept(MediaType.APPLICATION_JSON)
+                .exchange()
+                .expectStatus().is5xxServerError()
+                .expectBody()
+                .returnResult()
+                .getResponseBodyContent().length;
+
+        JsonNode entry = accessLogEntry();
+        assertThat(entry.get("route").asText()).isEqualTo("/api/v1/beer/{beerId}");
+        assertThat(entry.get("status").asInt()).isEqualTo(500);
+        assertThat(entry.get("bytes").asLong()).isEqualTo(bodyBytes).isPositive();
+    }
+
+    // logged as the response completes, which can be just after the client has the body
+    private JsonNode accessLogEntry() throws Exception {
+        long deadline = System.nanoTime() + Duration.ofSeconds(5).toNanos();
+        while (accessLog.list.isEmpty() && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+
+        assertThat(accessLog.list).hasSize(1);
+        return objectMapper.readTree(accessLog.list.get(0).getFormattedMessage());
+    }
+}
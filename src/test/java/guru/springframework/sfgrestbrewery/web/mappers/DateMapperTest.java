@@ -0,0 +1,36 @@
+package guru.springframework.sfgrestbrewery.web.mappers;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class DateMapperTest {
+
+    DateMapper dateMapper = new DateMapper();
+
+    @Test
+    @DisplayName("Timestamps keep their wall clock time at UTC")
+    void asOffsetDateTime() {
+        Timestamp timestamp = Timestamp.valueOf(LocalDateTime.of(2021, 3, 7, 13, 45, 12, 123456789));
+
+        assertThat(dateMapper.asOffsetDateTime(timestamp))
+                .isEqualTo(OffsetDateTime.of(2021, 3, 7, 13, 45, 12, 123456789, ZoneOffset.UTC));
+        assertThat(dateMapper.asOffsetDateTime(null)).isNull();
+    }
+
+    @Test
+    @DisplayName("Offset date times become the UTC wall clock time")
+    void asTimestamp() {
+        OffsetDateTime offsetDateTime = OffsetDateTime.of(2021, 3, 7, 15, 45, 12, 123456789, ZoneOffset.ofHours(2));
+
+        assertThat(dateMapper.asTimestamp(offsetDateTime))
+                .isEqualTo(Timestamp.valueOf(LocalDateTime.of(2021, 3, 7, 13, 45, 12, 123456789)));
+        assertThat(dateMapper.asTimestamp(null)).isNull();
+    }
+}